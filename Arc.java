@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Rectangle;
 
 /**
  * An arc that can be manipulated and that draws itself on a canvas.
@@ -201,6 +202,9 @@ public class Arc
         }
         
         extent = 360 - (2 * startAngle);
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
 
     
@@ -215,6 +219,9 @@ public class Arc
         }
         
         extent = 360 - (2 * startAngle);
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
     
     /**
@@ -225,6 +232,9 @@ public class Arc
     public void changeArcBeginning(int angle)
     {
          startAngle = angle;
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
     
     /**
@@ -239,6 +249,9 @@ public class Arc
         if (extent < 0) {
             extent += 360;
         }
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
         
     /**
@@ -311,7 +324,8 @@ public class Arc
             canvas.add(this, (g) -> {g.setColor(c);
                                       g.fillArc(xPosition, yPosition,
                                                 diameter, diameter,
-                                                startAngle, extent);});
+                                                startAngle, extent);},
+                       () -> new Rectangle(xPosition, yPosition, diameter, diameter));
         }
     }
 
@@ -4,15 +4,21 @@ import java.awt.Font;
 import java.awt.FontFormatException;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
@@ -34,6 +40,37 @@ public class Canvas {
     // shape identity and colors) is slightly more complex than necessary. This
     // is done on purpose to keep the interface and instance fields of the
     // shape objects in this project clean and simple for educational purposes.
+    //
+    // Only the parts of the canvas that changed are redrawn. Each shape can
+    // say where it is, and the canvas remembers where it last drew it: adding,
+    // removing or moving a shape marks where it was and where it is as damaged.
+    // A redraw repaints the damaged rectangles of a backing image, drawing only
+    // the shapes that overlap them, then copies the backing image to the
+    // screen. A shape that can't say where it is damages the whole canvas.
+    //
+    // The drawing is done by a render thread that ticks at a fixed frame rate.
+    // Changing the scene only asks for a frame, and however many changes are
+    // made between two ticks, the next tick draws them all at once. No frame
+    // is drawn while the canvas is paused, so a scene built while paused
+    // appears all at once when it is resumed.
+    //
+    // The shapes are kept in an array that is never changed once it has been
+    // published. Writers take a lock among themselves, copy the array with
+    // their change and publish the copy, so the render thread walks a
+    // consistent list of shapes without taking any lock, and a writer never
+    // waits for a frame to finish. Only the list is a snapshot: each shape's
+    // position, size and color are read while the game thread may be
+    // changing them, so a frame can show a change part way through, and the
+    // next frame, drawn because of that change, shows it whole.
+    // Everything about where shapes were drawn belongs to the render thread:
+    // it finds removed shapes by comparing each scene with the one it drew
+    // last.
+
+    // Damage rectangles are grown by this much to cover antialiased edges
+    private static final int DAMAGE_MARGIN = 2;
+    // More rectangles than this are merged into one around them all
+    private static final int MAX_DAMAGE_RECTS = 16;
+    private static final int DEFAULT_FRAME_RATE = 60;
 
     private static Canvas canvasSingleton;
 
@@ -54,11 +91,28 @@ public class Canvas {
     private JFrame frame;
     private CanvasPane canvas;
     private BufferStrategy bs;
-    private Color backgroundColor;
-    private final Map<Object, DrawShape> shapes;
-    private boolean paused = false;
+    private volatile Color backgroundColor;
+    // The shapes in the order they are drawn
+    private volatile ShapeEntry[] shapes = new ShapeEntry[0];
+    private final Object writeLock = new Object();
+    private volatile boolean paused = false;
     private boolean firstShown = false;
 
+    // Set when the scene has changed since the last frame
+    private volatile boolean frameRequested = true;
+    private volatile long frameNanos = 1_000_000_000L / DEFAULT_FRAME_RATE;
+    private Thread renderer;
+
+    // Set to have the whole canvas drawn again
+    private final AtomicBoolean damagedAll = new AtomicBoolean(true);
+
+    // Only the render thread uses these: the picture as last drawn, the
+    // scene it was drawn from, and the parts of it that are out of date
+    private BufferedImage backing;
+    private ShapeEntry[] lastScene = new ShapeEntry[0];
+    private long frameNumber;
+    private final List<Rectangle> damage = new ArrayList<>();
+
     /**
      * Create a Canvas.
      *
@@ -80,7 +134,6 @@ public class Canvas {
 
         backgroundColor = bgColor;
         frame.pack();
-        shapes = new LinkedHashMap<>(1000);
 
         // Listen for Ctrl-S to save the picture
         frame.addKeyListener(new KeyAdapter() {
@@ -190,10 +243,26 @@ public class Canvas {
             graphic.setColor(Color.black);
             graphic.dispose();
             bs.show();
+
+            renderer = new Thread(this::renderLoop, "Canvas renderer");
+            renderer.setDaemon(true);
+            renderer.start();
         }
         frame.setVisible(visible);
     }
 
+    /**
+     * Set how many frames a second the canvas draws, at most
+     *
+     * @param framesPerSecond the frame rate
+     */
+    public void setFrameRate(int framesPerSecond) {
+        if (framesPerSecond < 1) {
+            throw new IllegalArgumentException("The frame rate must be at least 1");
+        }
+        frameNanos = 1_000_000_000L / framesPerSecond;
+    }
+
     /**
      * Determine the width of the canvas
      */
@@ -209,7 +278,7 @@ public class Canvas {
     }
 
     /**
-     * Pause automatic redraws
+     * Pause automatic redraws. While paused, no frames are drawn at all.
      */
     public void pause(boolean pause) {
         this.paused = pause;
@@ -223,24 +292,40 @@ public class Canvas {
     }
 
     /**
-     * Draw a given shape onto the canvas.
+     * Draw a given shape onto the canvas. The canvas can't tell where the
+     * shape is, so every redraw repaints the whole canvas while it is shown.
      *
      * @param referenceObject an object to define identity for this shape
      * @param shapeFunction a function that draws the shape on a graphics
      * context
      */
     public void add(Object referenceObject, DrawShape shapeFunction) {
-        synchronized (shapes) {
-            if (shapes.containsKey(referenceObject)) {
-                shapes.remove(referenceObject);
-                // throw new IllegalArgumentException("Shape already added to canvas");
-            }
+        add(referenceObject, shapeFunction, null);
+    }
 
-            shapes.put(referenceObject, shapeFunction);
+    /**
+     * Draw a given shape onto the canvas.
+     *
+     * @param referenceObject an object to define identity for this shape
+     * @param shapeFunction a function that draws the shape on a graphics
+     * context
+     * @param shapeBounds a function that gives the rectangle the shape
+     * covers wherever it is now, or null if it can't tell
+     */
+    public void add(Object referenceObject, DrawShape shapeFunction, ShapeBounds shapeBounds) {
+        synchronized (writeLock) {
+            // A shape already on the canvas is replaced, and goes on top
+            ShapeEntry[] old = shapes;
+            int index = indexOf(old, referenceObject);
+            ShapeEntry[] scene = new ShapeEntry[(index < 0) ? old.length + 1 : old.length];
+            copyWithout(old, index, scene);
+            // throw new IllegalArgumentException("Shape already added to canvas");
+            scene[scene.length - 1] = new ShapeEntry(referenceObject, shapeFunction, shapeBounds);
+            shapes = scene;
         }
 
         if (!paused) {
-            redraw();
+            frameRequested = true;
         }
     }
 
@@ -251,19 +336,63 @@ public class Canvas {
      */
     public void remove(Object referenceObject) {
 
-        synchronized (shapes) {
-            if (!shapes.containsKey(referenceObject)) {
+        synchronized (writeLock) {
+            ShapeEntry[] old = shapes;
+            int index = indexOf(old, referenceObject);
+            if (index < 0) {
                 throw new IllegalArgumentException("Shape not added to canvas");
             }
 
-            shapes.remove(referenceObject);
+            ShapeEntry[] scene = new ShapeEntry[old.length - 1];
+            copyWithout(old, index, scene);
+            shapes = scene;
         }
 
         if (!paused) {
-            redraw();
+            frameRequested = true;
         }
     }
 
+    /**
+     * Note that a shape looks different without having moved, such as when
+     * its color changes, so it is drawn again at the next redraw
+     *
+     * @param referenceObject the shape object that changed
+     */
+    public void changed(Object referenceObject) {
+        ShapeEntry[] scene = shapes;
+        int index = indexOf(scene, referenceObject);
+        if (index >= 0) {
+            scene[index].changed = true;
+        }
+    }
+
+    // Find a shape in a scene
+    private static int indexOf(ShapeEntry[] scene, Object referenceObject) {
+        for (int i = 0; i < scene.length; i++) {
+            if (scene[i].reference.equals(referenceObject)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Copy a scene into a new array, leaving out one shape (if index >= 0)
+    private static void copyWithout(ShapeEntry[] scene, int index, ShapeEntry[] to) {
+        if (index < 0) {
+            System.arraycopy(scene, 0, to, 0, scene.length);
+        } else {
+            System.arraycopy(scene, 0, to, 0, index);
+            System.arraycopy(scene, index + 1, to, index, scene.length - index - 1);
+        }
+    }
+
+    private void damage(Rectangle area) {
+        Rectangle grown = new Rectangle(area);
+        grown.grow(DAMAGE_MARGIN, DAMAGE_MARGIN);
+        damage.add(grown);
+    }
+
     /**
      * Change the name of this canvas
      *
@@ -280,6 +409,7 @@ public class Canvas {
      */
     public void setBackgroundColor(Color bgColor) {
         this.backgroundColor = bgColor;
+        damagedAll.set(true);
     }
 
     /**
@@ -302,17 +432,186 @@ public class Canvas {
         canvas.addMouseListener(ml);
         canvas.addMouseMotionListener(ml);
     }
+
+    /**
+     * Add a handler to deal with keys pressed in the canvas window
+     */
+    public void addKeyHandler(KeyListener kl) {
+        frame.addKeyListener(kl);
+    }
     
     /**
-     * Redraw all shapes currently on the Canvas.
+     * Redraw the parts of the Canvas that have changed. The render thread
+     * draws them at its next frame; this only asks it to.
      */
     public void redraw() {
-        Graphics buffer = bs.getDrawGraphics();
+        frameRequested = true;
+    }
+
+    /**
+     * Draw a frame whenever one has been asked for, at a steady rate. A frame
+     * that runs long delays the next tick rather than being caught up on.
+     */
+    private void renderLoop() {
+        long nextFrame = System.nanoTime();
+        while (true) {
+            if (frameRequested && !paused) {
+                frameRequested = false;
+                try {
+                    render();
+                } catch (RuntimeException e) {
+                    // A shape that fails to draw mustn't stop every later frame
+                    e.printStackTrace();
+                }
+            }
+
+            nextFrame += frameNanos;
+            long delay = nextFrame - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            } else {
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Bring the backing image up to date and show it
+     */
+    private void render() {
+        repairDamage(shapes);
+
+        // The buffers can be lost, for example when the display changes
+        do {
+            do {
+                Graphics buffer = bs.getDrawGraphics();
+                buffer.drawImage(backing, 0, 0, null);
+                buffer.dispose();
+            } while (bs.contentsRestored());
+            bs.show();
+        } while (bs.contentsLost());
+    }
+
+    /**
+     * Bring the backing image up to date: find the shapes that moved, changed
+     * or left the scene, then repaint every damaged rectangle with the shapes
+     * that overlap it
+     *
+     * @param scene the shapes to draw, which no one else will change
+     */
+    private void repairDamage(ShapeEntry[] scene) {
+        boolean all = damagedAll.getAndSet(false);
+        Dimension size = canvas.getSize();
+        if (backing == null || backing.getWidth() != size.width
+                || backing.getHeight() != size.height) {
+            GraphicsConfiguration config = canvas.getGraphicsConfiguration();
+            backing = (config != null)
+                ? config.createCompatibleImage(Math.max(1, size.width), Math.max(1, size.height))
+                : new BufferedImage(Math.max(1, size.width), Math.max(1, size.height),
+                    BufferedImage.TYPE_INT_RGB);
+            all = true;
+        }
 
-        redraw(buffer);
+        frameNumber++;
+        for (ShapeEntry shape : scene) {
+            shape.seen = frameNumber;
+            if (shape.bounds == null) {
+                all = true;
+                continue;
+            }
+            // Only clear the flag once it is seen, so a change made now is
+            // not lost
+            boolean changed = shape.changed;
+            if (changed) {
+                shape.changed = false;
+            }
+            shape.now = shape.bounds.getBounds();
+            if (!shape.now.equals(shape.drawn)) {
+                if (shape.drawn != null) {
+                    damage(shape.drawn);
+                }
+                damage(shape.now);
+            } else if (changed) {
+                damage(shape.now);
+            }
+        }
 
-        buffer.dispose();
-        bs.show();
+        // Shapes drawn last time that aren't in this scene were removed or
+        // replaced, and leave a hole where they were
+        for (ShapeEntry shape : lastScene) {
+            if (shape.seen != frameNumber) {
+                if (shape.drawn == null) {
+                    all = true;
+                } else {
+                    damage(shape.drawn);
+                }
+            }
+        }
+        lastScene = scene;
+
+        Rectangle whole = new Rectangle(0, 0, size.width, size.height);
+        List<Rectangle> areas = new ArrayList<>();
+        if (all) {
+            areas.add(whole);
+        } else {
+            for (Rectangle area : mergeDamage()) {
+                Rectangle visible = area.intersection(whole);
+                if (!visible.isEmpty()) {
+                    areas.add(visible);
+                }
+            }
+        }
+
+        if (!areas.isEmpty()) {
+            Graphics2D g = backing.createGraphics();
+            for (Rectangle area : areas) {
+                g.setClip(area);
+                g.setColor(backgroundColor);
+                g.fillRect(area.x, area.y, area.width, area.height);
+                for (ShapeEntry shape : scene) {
+                    if (shape.now == null || shape.now.intersects(area)) {
+                        shape.draw.draw(g);
+                    }
+                }
+            }
+            g.dispose();
+        }
+
+        for (ShapeEntry shape : scene) {
+            shape.drawn = shape.now;
+        }
+        damage.clear();
+    }
+
+    /**
+     * Merge the damaged rectangles that overlap, so no pixel is painted
+     * twice; if there are too many, paint one rectangle around them all
+     */
+    private List<Rectangle> mergeDamage() {
+        List<Rectangle> merged = new ArrayList<>(damage);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < merged.size() && !changed; i++) {
+                for (int j = i + 1; j < merged.size(); j++) {
+                    if (merged.get(i).intersects(merged.get(j))) {
+                        merged.set(i, merged.get(i).union(merged.remove(j)));
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (merged.size() > MAX_DAMAGE_RECTS) {
+            Rectangle all = merged.get(0);
+            for (Rectangle area : merged) {
+                all = all.union(area);
+            }
+            merged.clear();
+            merged.add(all);
+        }
+        return merged;
     }
 
     /**
@@ -333,14 +632,12 @@ public class Canvas {
      * Redraw all shapes onto a graphics context
      */
     private void redraw(Graphics buffer) {
-        synchronized (shapes) {
-            buffer.setColor(backgroundColor);
-            Dimension size = canvas.getSize();
-            buffer.fillRect(0, 0, size.width, size.height);
+        buffer.setColor(backgroundColor);
+        Dimension size = canvas.getSize();
+        buffer.fillRect(0, 0, size.width, size.height);
 
-            shapes.forEach((k, shape) -> {
-                shape.draw(buffer);
-            });
+        for (ShapeEntry shape : shapes) {
+            shape.draw.draw(buffer);
         }
     }
 
@@ -348,7 +645,10 @@ public class Canvas {
      * Clear the whole canvas.
      */
     public void clear() {
-        shapes.clear();
+        synchronized (writeLock) {
+            shapes = new ShapeEntry[0];
+        }
+        damagedAll.set(true);
         redraw();
     }
 
@@ -410,4 +710,36 @@ public class Canvas {
     public interface DrawShape {
         public void draw(Graphics g);
     }
+
+    /**
+     * ***********************************************************************
+     * Inner interface ShapeBounds - a functional interface that allows a shape
+     * to tell the canvas the rectangle it covers where it is now
+     */
+    public interface ShapeBounds {
+        public Rectangle getBounds();
+    }
+
+    /**
+     * ***********************************************************************
+     * Inner class ShapeEntry - a shape on the canvas and where it was last drawn
+     */
+    private static class ShapeEntry {
+        final Object reference;
+        final DrawShape draw;
+        final ShapeBounds bounds;
+        // Set when the shape looks different without having moved
+        volatile boolean changed;
+        // Only the render thread uses these: where the shape was at the last
+        // redraw and is at this one, and the last frame it was in the scene
+        Rectangle drawn;
+        Rectangle now;
+        long seen;
+
+        ShapeEntry(Object reference, DrawShape draw, ShapeBounds bounds) {
+            this.reference = reference;
+            this.draw = draw;
+            this.bounds = bounds;
+        }
+    }
 }
@@ -178,6 +178,15 @@ public class Card {
     public int getHeight() {
         return image.getHeight();
     }
+
+    /**
+     * Resize the card, keeping its shape
+     * @param height the new height of the card (in pixels)
+     */
+    public void setHeight(int height) {
+        image.setHeight(height);
+        backImage.setHeight(height);
+    }
     
     /**
      * Determine if the card should be showing on the canvas
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Rectangle;
 
 /**
  * A circle that can be manipulated and that draws itself on a canvas.
@@ -211,7 +212,8 @@ public class Circle
             Canvas canvas = Canvas.getCanvas();
             Color c = Canvas.getColor(color);
             canvas.add(this,(g) -> {g.setColor(c);
-                                    g.fillOval(xPosition, yPosition, diameter, diameter);});
+                                    g.fillOval(xPosition, yPosition, diameter, diameter);},
+                       () -> new Rectangle(xPosition, yPosition, diameter, diameter));
         }
     }
 
@@ -5,20 +5,40 @@
  * @version 
  */
 import java.awt.Color;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.MouseInputAdapter;
 
+import engine.WarEngine;
+import engine.WarListener;
+import sim.GameRecord;
+import sim.RecordWriter;
+import sim.WinEstimator;
+
 
 public class Game
 {
+    private static final int RECORD_BUFFER_SIZE = 4096;
+
     private final Canvas canvas;
     private final List<Card> deck;
-
-    private List<Card> playerDeck;
-    private List<Card> cpuDeck;
+    private final WarEngine engine;
+    private final long seed;
+    private long gameNumber;
+    private final GameRecord record = new GameRecord();
+    private final int[] values;
+    private WinEstimator estimator;
+    private boolean estimating;
 
     private Text instructions;
     private Text war;
@@ -40,6 +60,42 @@ public class Game
     public Game() {
         deck = Card.loadCards();
 
+        // The engine plays by the rules, this class just shows what happens
+        values = new int[deck.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = deck.get(i).getValue();
+        }
+        engine = new WarEngine(values);
+        seed = System.nanoTime();
+        engine.setListener(new WarListener() {
+            public void cardsPlayed(int playerCard, int cpuCard) {
+                showCards(playerCard, cpuCard, 200);
+            }
+
+            public void warStarted() {
+                flashRed();
+                war.makeVisible();
+            }
+
+            public void faceDown(int who, int card) {
+                placeFaceDown(who, card);
+            }
+
+            public void warCardsPlayed(int playerCard, int cpuCard) {
+                showCards(playerCard, cpuCard, 400);
+            }
+
+            public void potWon(int who) {
+                if (who == WarEngine.PLAYER) {
+                    playerWins.makeVisible();
+                    cpuWins.makeInvisible();
+                } else {
+                    playerWins.makeInvisible();
+                    cpuWins.makeVisible();
+                }
+            }
+        });
+
         // Prepare the canvas
         canvas = Canvas.getCanvas();
         canvas.setBackgroundColor("#35654D");
@@ -61,6 +117,23 @@ public class Game
             }
         });
 
+        // S saves the game in progress, L picks it up again and O shows the
+        // player's chances
+        canvas.addKeyHandler(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                if (e.getModifiersEx() != 0) {
+                    return;
+                }
+                if (e.getKeyCode() == KeyEvent.VK_S) {
+                    saveGame();
+                } else if (e.getKeyCode() == KeyEvent.VK_L) {
+                    loadGame();
+                } else if (e.getKeyCode() == KeyEvent.VK_O) {
+                    showOdds();
+                }
+            }
+        });
+
         int cardWidth = deck.get(0).getWidth();
         PLAYER_X = 200;
         CPU_X = canvas.getWidth() - PLAYER_X - cardWidth;
@@ -90,16 +163,6 @@ public class Game
         cpuWins.setX(CPU_X + (cardWidth - cpuWins.getWidth()) / 2);
     }
 
-    // Manually shuffle the deck
-    private void shuffleDeck(List<Card> deck) {
-        for (int i = 0; i < deck.size(); i++) {
-            int randomIndex = (int) (Math.random() * deck.size());
-            Card temp = deck.get(i);
-            deck.set(i, deck.get(randomIndex));
-            deck.set(randomIndex, temp);
-        }
-    }
-    
     /**
      * Reset the Game and display to the beginning state
      */
@@ -112,16 +175,15 @@ public class Game
         player.makeVisible();
         computer.makeVisible();
 
-        shuffleDeck(deck); // Shuffle the deck manually
+        // The same seed and game number always give the same deal
+        engine.deal(seed, gameNumber);
+        record.start(seed, gameNumber, engine);
+        gameNumber++;
 
-        // Split the deck into two halves
-        playerDeck = new ArrayList<>(deck.subList(0, deck.size() / 2));
-        cpuDeck = new ArrayList<>(deck.subList(deck.size() / 2, deck.size()));
-        
         canvas.pause(true);
 
-        lineUpCards(playerDeck, 10);
-        lineUpCards(cpuDeck, canvas.getWidth() - deck.get(0).getWidth() - 10);
+        lineUpCards(WarEngine.PLAYER, 10);
+        lineUpCards(WarEngine.CPU, canvas.getWidth() - deck.get(0).getWidth() - 10);
         
         canvas.pause(false);
         canvas.redraw();
@@ -132,20 +194,21 @@ public class Game
 
         canvas.pause(true);
 
-        lineUpCards(playerDeck, 10);
-        lineUpCards(cpuDeck, canvas.getWidth() - deck.get(0).getWidth() - 10);
+        lineUpCards(WarEngine.PLAYER, 10);
+        lineUpCards(WarEngine.CPU, canvas.getWidth() - deck.get(0).getWidth() - 10);
 
         canvas.pause(false);
         canvas.redraw();
     }
 
-    private void lineUpCards(List<Card> cards, int x) {
-        if (cards.isEmpty()) return;
+    private void lineUpCards(int who, int x) {
+        int[] cards = engine.getCards(who);
+        if (cards.length == 0) return;
 
-        int y = canvas.getHeight() - cards.get(0).getHeight() - 10;
+        int y = canvas.getHeight() - deck.get(0).getHeight() - 10;
 
-        for (int i = cards.size() - 1; i >= 0; i--) {
-            Card card = cards.get(i);
+        for (int i = cards.length - 1; i >= 0; i--) {
+            Card card = deck.get(cards[i]);
             card.setPosition(x, y);
             card.setFaceUp(false);
             card.makeInvisible();
@@ -161,111 +224,149 @@ public class Game
 
         resetDecks();
 
-        if (playerDeck.isEmpty() || cpuDeck.isEmpty()) {
+        if (engine.isOver()) {
             displayWinner();
             return;
         }
-    
-        // Flip top cards (remove the first card)
-        Card playerCard = playerDeck.remove(0);
-        Card cpuCard = cpuDeck.remove(0);
 
-        List<Card> pot = new ArrayList<>();
-        pot.add(playerCard);
-        pot.add(cpuCard);
-    
-        // Display cards
-        playerCard.setPosition(PLAYER_X, 200);
-        cpuCard.setPosition(CPU_X, 200);
-        playerCard.turnFaceUp();
-        cpuCard.turnFaceUp();
-    
-        // Determine round winner
-        int playerValue = playerCard.getValue();
-        int cpuValue = cpuCard.getValue();
+        int winner = engine.playRound();
+        record.addRound(winner, engine.getWarDepth());
+    }
 
-        if (playerValue > cpuValue) {
-            playerDeck.addAll(pot);
-            playerWins.makeVisible();
-            cpuWins.makeInvisible();
-        } else if (cpuValue > playerValue) {
-            cpuDeck.addAll(pot);
-            playerWins.makeInvisible();
-            cpuWins.makeVisible();
-        } else {
-            handleWar(playerCard, cpuCard, pot);
-        }
+    private void showCards(int playerCard, int cpuCard, int y) {
+        Card pCard = deck.get(playerCard);
+        Card cCard = deck.get(cpuCard);
+        pCard.setPosition(PLAYER_X, y);
+        cCard.setPosition(CPU_X, y);
+        pCard.turnFaceUp();
+        cCard.turnFaceUp();
     }
-        
-    private void handleWar(Card playerCard, Card cpuCard, List<Card> pot) {
-        flashRed();
-        war.makeVisible();
-    
-        // Each player places 3 face-down cards (if they have enough cards)
-        for (int i = 0; i < 3; i++) {
-            if (playerDeck.size() > 1) {
-                Card pCard = playerDeck.remove(0);
-                pot.add(pCard);
-                pCard.setFaceUp(false);
-                pCard.setPosition(POT_X - 10, nextPotY);
-                pCard.makeInvisible();
-                pCard.makeVisible();
-                nextPotY += 5;
-            }
-            wait(200); canvas.redraw();
-
-            if (cpuDeck.size() > 1) {
-                Card cCard = cpuDeck.remove(0);
-                pot.add(cCard);
-                cCard.setFaceUp(false);
-                cCard.setPosition(POT_X + 10, nextPotY);
-                cCard.makeInvisible();
-                cCard.makeVisible();
-                nextPotY += 5;
-            }
-            wait(300); canvas.redraw();
-        }
-    
-        // Each player places one face-up card (if they have any left)
-        if (!playerDeck.isEmpty() && !cpuDeck.isEmpty()) {
-            Card playerWarCard = playerDeck.remove(0);
-            Card cpuWarCard = cpuDeck.remove(0);
-            
-            playerWarCard.setPosition(PLAYER_X, 400);
-            cpuWarCard.setPosition(CPU_X, 400);
-            playerWarCard.turnFaceUp();
-            cpuWarCard.turnFaceUp();
-    
-            pot.add(playerWarCard);
-            pot.add(cpuWarCard);
-    
-            // Determine war winner
-            int playerValue = playerWarCard.getValue();
-            int cpuValue = cpuWarCard.getValue();
-    
-            if (playerValue > cpuValue) {
-                playerDeck.addAll(pot); 
-                playerWins.makeVisible();              
-            } else if (cpuValue > playerValue) {
-                cpuDeck.addAll(pot);
-                cpuWins.makeVisible();
-            } else {
-                handleWar(playerWarCard, cpuWarCard, pot); // Recursive war
-            }
+
+    private void placeFaceDown(int who, int card) {
+        if (card != WarEngine.NO_CARD) {
+            Card c = deck.get(card);
+            c.setFaceUp(false);
+            c.setPosition((who == WarEngine.PLAYER) ? POT_X - 10 : POT_X + 10, nextPotY);
+            c.makeInvisible();
+            c.makeVisible();
+            nextPotY += 5;
         }
+        wait((who == WarEngine.PLAYER) ? 200 : 300); canvas.redraw();
     }
         
     private void displayWinner() {
         done = true;
 
+        record.finish(engine);
+        saveRecord();
+
         // TODO: Make this graphical
-        if (playerDeck.isEmpty()) {
+        if (engine.getWinner() == WarEngine.DRAW) {
+            System.out.println("Draw! The game repeats every "
+                + engine.getCycleLength() + " rounds");
+        } else if (engine.getWinner() == WarEngine.CPU) {
             System.out.println("CPU Wins!");
         } else {
             System.out.println("Player Wins!");
         }
     }
         
+    // Add the game just finished to the file of played games. One record is
+    // a few hundred bytes, so the writer doesn't need its usual large buffer.
+    private void saveRecord() {
+        try (RecordWriter records = new RecordWriter(Path.of("games.war"), RECORD_BUFFER_SIZE)) {
+            records.write(record);
+        } catch (IOException e) {
+            System.err.println("Could not save the game to games.war");
+        }
+    }
+
+    /**
+     * Save the game in progress to war.sav: whether it is over, where the next
+     * face-down card goes, then the engine's state. The whole file is well
+     * under 100 bytes.
+     */
+    public void saveGame() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) (done ? 1 : 0));
+        buffer.putShort((short) nextPotY);
+        engine.save(buffer);
+        try {
+            Files.write(Path.of("war.sav"), Arrays.copyOf(buffer.array(), buffer.position()));
+        } catch (IOException e) {
+            System.err.println("Could not save the game to war.sav");
+        }
+    }
+
+    /**
+     * Pick up the game saved in war.sav where it was left
+     */
+    public void loadGame() {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Path.of("war.sav")));
+            // The engine checks the whole state before it changes anything
+            boolean over = buffer.get() != 0;
+            int potY = buffer.getShort();
+            engine.restore(buffer);
+            done = over;
+
+            // The record of a resumed game starts from where it was saved
+            record.start(seed, gameNumber, engine);
+            gameNumber++;
+
+            war.makeInvisible();
+            playerWins.makeInvisible();
+            cpuWins.makeInvisible();
+            instructions.makeInvisible();
+            canvas.clear();
+            player.makeVisible();
+            computer.makeVisible();
+            resetDecks();
+            nextPotY = potY;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load a game from war.sav");
+        }
+    }
+
+    /**
+     * Estimate the player's chance of winning from here, knowing their own
+     * cards but not the order of the computer's. The games are played on a
+     * thread of their own so the window keeps responding, and the result is
+     * shown back on the event thread.
+     */
+    public void showOdds() {
+        if (estimating) {
+            return;
+        }
+        if (estimator == null) {
+            estimator = new WinEstimator(values, seed, ForkJoinPool.commonPool());
+        }
+        int[] playerCards = engine.getCards(WarEngine.PLAYER);
+        int[] cpuCards = engine.getCards(WarEngine.CPU);
+        estimating = true;
+
+        Thread odds = new Thread(() -> {
+            WinEstimator.Estimate estimate = null;
+            try {
+                estimate = estimator.estimate(playerCards, cpuCards, 0.05, 1_000_000);
+            } catch (RuntimeException e) {
+                System.err.println("Could not estimate the odds");
+            }
+
+            WinEstimator.Estimate result = estimate;
+            SwingUtilities.invokeLater(() -> {
+                estimating = false;
+
+                // TODO: Make this graphical
+                if (result != null) {
+                    System.out.println("Odds: " + result);
+                }
+            });
+        }, "Odds");
+        odds.setDaemon(true);
+        odds.start();
+    }
+
     /**
      * Handle the user clicking in the window
      * @param button the button that was pressed
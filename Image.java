@@ -1,39 +1,59 @@
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import javax.imageio.ImageIO;
 
 /**
  * An image that can be moved, resized, and that draws itself on a canvas.
+ *
+ * Each image file is only decoded once: every Image of the same file shares
+ * the same pixels, which are never drawn on, so a deck with 52 card backs
+ * holds one back in memory rather than 52. The same goes for each size an
+ * image is shown at: it is scaled once, into the screen's own pixel format,
+ * when the size is set, so drawing it is a straight copy.
+ *
+ * Only the scaled images are drawn, so an Image keeps its scaled image and
+ * not the decoded one. Both caches hold their images by soft reference: a
+ * decoded image, or a size no Image is shown at any more, can be collected
+ * when memory runs short, and is decoded or scaled again if it is asked for.
  */
 public class Image {
+    // Decoded images by file, shared by every Image of every game
+    private static final Map<String, SoftReference<BufferedImage>> decoded = new ConcurrentHashMap<>();
+    // Scaled images by file and size
+    private static final Map<String, SoftReference<BufferedImage>> scaled = new ConcurrentHashMap<>();
+
     private boolean isVisible;
     private int xPosition;
     private int yPosition;
     private int xSize;
     private int ySize;
-    private BufferedImage image;
+    private String path;
+    private int sourceWidth;
+    private int sourceHeight;
+    // Set on the game thread whenever the size is, and read by the canvas's
+    // render thread
+    private volatile BufferedImage raster;
     
     /**
      * Create an image with a default position and size.
      * @param filename the name of the image file to load
      */
     public Image(String filename) {
-        try {
-            image = ImageIO.read(new File(filename));
-            xSize = image.getWidth();
-            ySize = image.getHeight();
-        }
-        catch (IOException e) {
-            System.err.println("Could not load " + filename);
-        }
-
-        xPosition = 0;
-        yPosition = 0;
-        isVisible = false;
+        open(filename);
+        raster = scaled();
     }
 
     /**
@@ -44,12 +64,8 @@ public class Image {
      * @param height the height of the image
      */
     public Image(String filename, int width, int height) {
-        this(filename);
+        open(filename);
         scaleImage(width, height);
-
-        isVisible = false;
-        xPosition = 0;
-        yPosition = 0;
     }
 
     /**
@@ -60,7 +76,8 @@ public class Image {
      * @param visible whether the image should be visible
      */
     public Image(String filename, int x, int y, boolean visible) {
-        this(filename);
+        open(filename);
+        raster = scaled();
 
         xPosition = x;
         yPosition = y;
@@ -81,7 +98,7 @@ public class Image {
      * @param visible whether the image should be visible
      */
     public Image(String filename, int x, int y, int width, int height, boolean visible) {
-        this(filename);
+        open(filename);
         scaleImage(width, height);
         
         xPosition = x;
@@ -92,6 +109,133 @@ public class Image {
         }
     }
 
+    /**
+     * Load the image file and start at its own size, invisible in the top
+     * left corner. Its raster is made by the constructor once it knows the
+     * size the image is shown at, so a natural size raster isn't made only
+     * to be thrown away.
+     * @param filename the name of the image file to load
+     */
+    private void open(String filename) {
+        try {
+            String absolute = new File(filename).getAbsolutePath();
+            BufferedImage source = load(absolute);
+            path = absolute;
+            sourceWidth = source.getWidth();
+            sourceHeight = source.getHeight();
+            xSize = sourceWidth;
+            ySize = sourceHeight;
+        }
+        catch (IOException e) {
+            System.err.println("Could not load " + filename);
+        }
+
+        xPosition = 0;
+        yPosition = 0;
+        isVisible = false;
+    }
+
+    /**
+     * Get the decoded image of a file, decoding it only if it isn't cached
+     * @param path the absolute path of the image file
+     * @return the shared image, which must not be drawn on
+     * @throws IOException if the file can't be read
+     */
+    private static BufferedImage load(String path) throws IOException {
+        try {
+            return cached(decoded, path, (key) -> {
+                try {
+                    BufferedImage read = ImageIO.read(new File(key));
+                    if (read == null) {
+                        throw new IOException("Unknown image format");
+                    }
+                    return read;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Get an image scaled to a size, scaling it only if that size isn't
+     * cached
+     * @param path the absolute path of the image file
+     * @param width the width to scale to
+     * @param height the height to scale to
+     * @return the shared scaled image, which must not be drawn on
+     * @throws UncheckedIOException if the file has to be decoded again and
+     * can't be read any more
+     */
+    private static BufferedImage scaled(String path, int width, int height) {
+        return cached(scaled, path + "@" + width + "x" + height, (key) -> {
+            try {
+                return scale(load(path), Math.max(1, width), Math.max(1, height));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Get an image from a cache of soft references, making it again if it
+     * isn't there or has been collected
+     */
+    private static BufferedImage cached(Map<String, SoftReference<BufferedImage>> cache, String key,
+                                        Function<String, BufferedImage> make) {
+        // Hold the image strongly until it is returned, so it can't be
+        // collected in between
+        BufferedImage[] image = new BufferedImage[1];
+        cache.compute(key, (k, reference) -> {
+            image[0] = (reference != null) ? reference.get() : null;
+            if (image[0] == null) {
+                image[0] = make.apply(k);
+                return new SoftReference<>(image[0]);
+            }
+            return reference;
+        });
+        return image[0];
+    }
+
+    /**
+     * Scale an image into the screen's pixel format. Shrinking is done by
+     * halving the image at each step, since one bilinear step from something
+     * more than twice the size skips over most of its pixels.
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = (w > width) ? Math.max(width, w / 2) : width;
+            h = (h > height) ? Math.max(height, h / 2) : height;
+
+            BufferedImage next = compatibleImage(w, h, source.getTransparency());
+            Graphics2D g = next.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    /**
+     * Create an empty image in the format the screen draws fastest, or a
+     * plain RGB image when there is no screen
+     */
+    private static BufferedImage compatibleImage(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, (transparency == Transparency.OPAQUE)
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+    }
+
     /**
      * Set the X position of the image.
      * @param x the new X position
@@ -208,9 +352,8 @@ public class Image {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
             canvas.add(this, (g) -> {
-                    ((Graphics2D)g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                    g.drawImage(image, xPosition, yPosition, xSize, ySize, null);
-            });
+                    g.drawImage(raster, xPosition, yPosition, null);
+            }, () -> new Rectangle(xPosition, yPosition, xSize, ySize));
         }
     }
 
@@ -225,6 +368,14 @@ public class Image {
         }
     }
 
+    /**
+     * Get the image at the size it is shown at, or null if the file couldn't
+     * be loaded
+     */
+    private BufferedImage scaled() {
+        return (path != null) ? scaled(path, xSize, ySize) : null;
+    }
+
     /**
      * Scale the image to the specified width and height. If one of the dimensions is -1, the
      * image will be scaled to maintain the aspect ratio.
@@ -236,14 +387,15 @@ public class Image {
             throw new IllegalArgumentException("Width and height cannot both be less than 0");
         }
         else if (width < 0) {
-            width = (int) (height * image.getWidth() / (double)image.getHeight());
+            width = (int) (height * sourceWidth / (double)sourceHeight);
         }
         else if (height < 0) {
-            height = (int) (width * image.getHeight() / (double)image.getWidth());
+            height = (int) (width * sourceHeight / (double)sourceWidth);
         }
 
         xSize = width;
         ySize = height;
+        raster = scaled();
     }
 
     /**
@@ -0,0 +1,273 @@
+import java.awt.Color;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.MouseInputAdapter;
+
+import engine.MultiWarEngine;
+import engine.MultiWarListener;
+
+/**
+ * A window that shows a game of War between any number of players seated
+ * around the table. Each click plays a round; the cards turned over are laid
+ * out between each seat and the middle of the table, and the face-down cards
+ * of a war are piled in the middle. The cards get smaller as more players
+ * sit down so the whole table always fits in the window.
+ */
+public class MultiGame
+{
+    private final Canvas canvas;
+    private final List<Card> deck;
+    private final MultiWarEngine engine;
+    private final int players;
+    private final long seed;
+    private long gameNumber;
+
+    private final int cardWidth;
+    private final int cardHeight;
+    private final int[] deckX;
+    private final int[] deckY;
+    private final int[] playedX;
+    private final int[] playedY;
+
+    private Text instructions;
+    private Text war;
+    // Each seat's card count, and the word shown when the seat takes the pot
+    private final Text[] labels;
+    private final Text[] wins;
+    private boolean done;
+
+    private int potCards;
+    private int warLevel;
+
+    /**
+     * Create a window that will display a game between some number of players
+     * @param players the number of players, from 2 to 64
+     */
+    public MultiGame(int players) {
+        this.players = players;
+
+        // Enough decks for everyone to get a few cards
+        int[] standard = MultiWarEngine.standardValues(players);
+        deck = new ArrayList<>();
+        while (deck.size() < standard.length) {
+            deck.addAll(Card.loadCards());
+        }
+
+        // The cards shrink as more seats are squeezed around the table
+        cardHeight = Math.max(30, Math.min(120, 900 / players));
+        int[] values = new int[deck.size()];
+        for (int i = 0; i < values.length; i++) {
+            deck.get(i).setHeight(cardHeight);
+            values[i] = deck.get(i).getValue();
+        }
+        cardWidth = deck.get(0).getWidth();
+
+        engine = new MultiWarEngine(players, values);
+        seed = System.nanoTime();
+        engine.setListener(new MultiWarListener() {
+            public void cardPlayed(int seat, int card) {
+                showCard(seat, card, 0);
+            }
+
+            public void warStarted(int tied) {
+                warLevel++;
+                flashRed();
+                war.makeVisible();
+            }
+
+            public void faceDown(int seat, int card) {
+                placeFaceDown(card);
+            }
+
+            public void warCardPlayed(int seat, int card) {
+                showCard(seat, card, warLevel);
+            }
+
+            public void potWon(int seat) {
+                wins[seat].makeVisible();
+            }
+        });
+
+        // Prepare the canvas
+        canvas = Canvas.getCanvas();
+        canvas.setBackgroundColor("#35654D");
+        canvas.clear();
+        canvas.setTitle("War - " + players + " Players");
+
+        canvas.addMouseHandler(new MouseInputAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                onClick();
+            }
+        });
+
+        // Seat the players around an oval, seat 0 at the bottom, with the
+        // cards each one plays part of the way towards the middle
+        deckX = new int[players];
+        deckY = new int[players];
+        playedX = new int[players];
+        playedY = new int[players];
+        int centreX = (canvas.getWidth() - cardWidth) / 2;
+        int centreY = (canvas.getHeight() - cardHeight) / 2;
+        int radiusX = centreX - 10;
+        int radiusY = centreY - 30;
+        for (int seat = 0; seat < players; seat++) {
+            double angle = Math.PI / 2 + 2 * Math.PI * seat / players;
+            deckX[seat] = centreX + (int) (radiusX * Math.cos(angle));
+            deckY[seat] = centreY + (int) (radiusY * Math.sin(angle));
+            playedX[seat] = centreX + (int) (0.55 * radiusX * Math.cos(angle));
+            playedY[seat] = centreY + (int) (0.55 * radiusY * Math.sin(angle));
+        }
+
+        labels = new Text[players];
+        wins = new Text[players];
+        for (int seat = 0; seat < players; seat++) {
+            labels[seat] = new Text("", deckX[seat], deckY[seat] + cardHeight + 14, 14, "white", false);
+            wins[seat] = new Text("wins", playedX[seat], playedY[seat] - 4, 16, "white", false);
+        }
+
+        instructions = new Text("Click to play", 10, 30, 20, "white", false);
+        war = new Text("WAR!", 300, 80, 50, "red", false);
+        war.setX((canvas.getWidth() - war.getWidth()) / 2);
+
+        reset();
+    }
+
+    /**
+     * Reset the Game and display to the beginning state
+     */
+    public void reset() {
+        done = false;
+
+        // The same seed and game number always give the same deal
+        engine.deal(seed, gameNumber);
+        gameNumber++;
+
+        showTable();
+        instructions.makeVisible();
+    }
+
+    // Clear the table and show every player's cards
+    private void showTable() {
+        potCards = 0;
+        warLevel = 0;
+
+        canvas.pause(true);
+
+        war.makeInvisible();
+        instructions.makeInvisible();
+        for (int seat = 0; seat < players; seat++) {
+            labels[seat].makeInvisible();
+            wins[seat].makeInvisible();
+        }
+        canvas.clear();
+        for (int seat = 0; seat < players; seat++) {
+            lineUpCards(seat);
+        }
+
+        canvas.pause(false);
+        canvas.redraw();
+    }
+
+    private void lineUpCards(int seat) {
+        int count = engine.getCardCount(seat);
+        labels[seat].setText("P" + (seat + 1) + ((count > 0) ? ": " + count : ": out"));
+        labels[seat].makeVisible();
+
+        // Offset the cards a little so the size of the stack shows
+        int y = deckY[seat];
+        for (int i = count - 1; i >= 0; i--) {
+            Card card = deck.get(engine.getCard(seat, i));
+            card.setPosition(deckX[seat], y - Math.min(i, 20));
+            card.setFaceUp(false);
+            card.makeInvisible();
+            card.makeVisible();
+        }
+    }
+
+    private void playRound() {
+        showTable();
+
+        if (engine.isOver()) {
+            displayWinner();
+            return;
+        }
+
+        engine.playRound();
+    }
+
+    private void showCard(int seat, int card, int level) {
+        // Each level of war moves the seat's card a little towards the middle
+        int x = playedX[seat] + level * (canvas.getWidth() / 2 - playedX[seat]) / 8;
+        int y = playedY[seat] + level * (canvas.getHeight() / 2 - playedY[seat]) / 8;
+        Card c = deck.get(card);
+        c.setPosition(x, y);
+        c.makeInvisible();
+        c.turnFaceUp();
+        c.makeVisible();
+    }
+
+    private void placeFaceDown(int card) {
+        if (card != MultiWarEngine.NO_CARD) {
+            Card c = deck.get(card);
+            c.setFaceUp(false);
+            c.setPosition((canvas.getWidth() - cardWidth) / 2 + (potCards % 3 - 1) * 10,
+                (canvas.getHeight() - cardHeight) / 2 + potCards / 3 * 3);
+            c.makeInvisible();
+            c.makeVisible();
+            potCards++;
+        }
+        Game.wait(100);
+        canvas.redraw();
+    }
+
+    private void displayWinner() {
+        done = true;
+
+        // TODO: Make this graphical
+        int winner = engine.getWinner();
+        if (winner == MultiWarEngine.DRAW) {
+            System.out.println("Draw! The game repeats every "
+                + engine.getCycleLength() + " rounds");
+        } else if (winner == MultiWarEngine.NONE) {
+            System.out.println("Everyone ran out of cards!");
+        } else {
+            System.out.println("Player " + (winner + 1) + " Wins!");
+        }
+    }
+
+    /**
+     * Handle the user clicking in the window
+     */
+    private void onClick() {
+        if (!done) {
+            playRound();
+        }
+        else {
+            reset();
+        }
+    }
+
+    /**
+     * Quickly flash the window background red
+     */
+    public void flashRed() {
+        Color bgcolor = canvas.getBackgroundColor();
+
+        canvas.setBackgroundColor("red");
+        canvas.redraw();
+        Game.wait(300);
+
+        canvas.setBackgroundColor(bgcolor);
+        canvas.redraw();
+    }
+
+    /**
+     * Run the game
+     * @param args the number of players (default 4)
+     */
+    public static void main(String[] args) {
+        new MultiGame((args.length > 0) ? Integer.parseInt(args[0]) : 4);
+    }
+}
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Rectangle;
 
 /**
  * A rectangle that can be manipulated and that draws itself on a canvas.
@@ -225,6 +226,9 @@ public class Rect
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
 
     /**
@@ -246,7 +250,8 @@ public class Rect
             Canvas canvas = Canvas.getCanvas();
             canvas.add(this, (g) -> {g.setColor(color);
                                      g.fillRect(xPosition, yPosition,
-                                                xSize, ySize);});
+                                                xSize, ySize);},
+                       () -> new Rectangle(xPosition, yPosition, xSize, ySize));
         }
     }
 
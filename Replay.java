@@ -0,0 +1,322 @@
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.swing.event.MouseInputAdapter;
+
+import engine.WarEngine;
+import engine.WarListener;
+import sim.GameRecord;
+import sim.RecordFile;
+
+/**
+ * A window that replays recorded games. Any round of any game can be shown
+ * straight away: the record file is memory mapped and indexed, and each game
+ * is played through once when it is opened, saving the engine's state every
+ * few rounds, so showing a round only means copying the nearest saved state
+ * and playing at most a few rounds on from it.
+ *
+ * Left and right step through the rounds, page up and page down jump 50
+ * rounds, home and end go to the start and end of the game, up and down
+ * change game, and dragging the mouse across the window scrubs through the
+ * game.
+ */
+public class Replay
+{
+    // Rounds between saved states
+    private static final int CHECKPOINT_INTERVAL = 32;
+
+    private final Canvas canvas;
+    private final List<Card> deck;
+    private final RecordFile file;
+    private final GameRecord record;
+    private final int[] values;
+    private final WarEngine engine;
+    private final WarListener listener;
+    private WarEngine[] checkpoints;
+
+    private int game;
+    private int round;
+
+    private Text status;
+    private Text war;
+    private Text player;
+    private Text computer;
+    private Text playerWins;
+    private Text cpuWins;
+
+    private final int PLAYER_X;
+    private final int CPU_X;
+    private final int POT_X;
+
+    private int nextPotY;
+
+    /**
+     * Create a window that replays the games in a record file
+     * @param file the record file to replay
+     */
+    public Replay(RecordFile file) {
+        this.file = file;
+        this.record = new GameRecord();
+        this.checkpoints = new WarEngine[0];
+
+        deck = Card.loadCards();
+        values = new int[deck.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = deck.get(i).getValue();
+        }
+        engine = new WarEngine(values);
+
+        // Show where the cards go as the engine replays the shown round
+        listener = new WarListener() {
+            public void cardsPlayed(int playerCard, int cpuCard) {
+                showCards(playerCard, cpuCard, 200);
+            }
+
+            public void warStarted() {
+                war.makeVisible();
+            }
+
+            public void faceDown(int who, int card) {
+                placeFaceDown(who, card);
+            }
+
+            public void warCardsPlayed(int playerCard, int cpuCard) {
+                showCards(playerCard, cpuCard, 400);
+            }
+
+            public void potWon(int who) {
+                if (who == WarEngine.PLAYER) {
+                    playerWins.makeVisible();
+                } else {
+                    cpuWins.makeVisible();
+                }
+            }
+        };
+
+        canvas = Canvas.getCanvas();
+        canvas.setBackgroundColor("#35654D");
+        canvas.clear();
+        canvas.setTitle("War - Replay");
+
+        canvas.addKeyHandler(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                onKey(e.getKeyCode());
+            }
+        });
+        canvas.addMouseHandler(new MouseInputAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                onDrag(e.getX());
+            }
+        });
+
+        int cardWidth = deck.get(0).getWidth();
+        PLAYER_X = 200;
+        CPU_X = canvas.getWidth() - PLAYER_X - cardWidth;
+        POT_X = (canvas.getWidth() - cardWidth) / 2;
+
+        buildDisplay();
+
+        if (file.getGames() == 0) {
+            status = new Text("No games to replay", 10, 30, 20, "white", true);
+        } else {
+            openGame(0);
+        }
+    }
+
+    private void buildDisplay() {
+        int width = canvas.getWidth();
+        int cardWidth = deck.get(0).getWidth();
+
+        war = new Text("WAR!", 300, 80, 50, "red", false);
+        war.setX((width - war.getWidth()) / 2);
+
+        player = new Text("player", PLAYER_X, 193, 25, "white", false);
+        computer = new Text("computer", CPU_X, 193, 25, "white", false);
+        playerWins = new Text("wins", PLAYER_X + 50, 393, 20, "white", false);
+        playerWins.setX(PLAYER_X + (cardWidth - playerWins.getWidth()) / 2);
+        cpuWins = new Text("wins", CPU_X + 50, 393, 20, "white", false);
+        cpuWins.setX(CPU_X + (cardWidth - cpuWins.getWidth()) / 2);
+    }
+
+    /**
+     * Read a game from the file and show its deal
+     * @param game the position of the game in the file
+     */
+    private void openGame(int game) {
+        this.game = game;
+        try {
+            file.read(game, record);
+        } catch (IOException e) {
+            System.err.println("Could not read game " + game);
+            return;
+        }
+
+        // Play the game through once, saving the state as it goes
+        engine.setListener(null);
+        record.deal(engine);
+        int needed = record.getRounds() / CHECKPOINT_INTERVAL + 1;
+        if (checkpoints.length < needed) {
+            WarEngine[] grown = new WarEngine[needed];
+            System.arraycopy(checkpoints, 0, grown, 0, checkpoints.length);
+            for (int i = checkpoints.length; i < needed; i++) {
+                grown[i] = new WarEngine(values);
+            }
+            checkpoints = grown;
+        }
+        for (int i = 0; i < needed; i++) {
+            checkpoints[i].copyFrom(engine);
+            for (int r = 0; r < CHECKPOINT_INTERVAL && !engine.isOver(); r++) {
+                engine.playRound();
+            }
+        }
+
+        showRound(0);
+    }
+
+    /**
+     * Show the cards as they were at the end of a round
+     * @param round the number of rounds played, from 0 for the deal to the
+     * number of rounds in the game
+     */
+    private void showRound(int round) {
+        this.round = Math.max(0, Math.min(round, record.getRounds()));
+
+        canvas.pause(true);
+
+        war.makeInvisible();
+        playerWins.makeInvisible();
+        cpuWins.makeInvisible();
+        player.makeInvisible();
+        computer.makeInvisible();
+        if (status != null) {
+            status.makeInvisible();
+        }
+        canvas.clear();
+
+        // Get to the start of the round from the nearest saved state
+        int before = Math.max(0, this.round - 1);
+        engine.setListener(null);
+        engine.copyFrom(checkpoints[before / CHECKPOINT_INTERVAL]);
+        while (engine.getRounds() < before) {
+            engine.playRound();
+        }
+
+        nextPotY = 390;
+        lineUpCards(WarEngine.PLAYER, 10);
+        lineUpCards(WarEngine.CPU, canvas.getWidth() - deck.get(0).getWidth() - 10);
+        player.makeVisible();
+        computer.makeVisible();
+
+        // Then play the round itself where it can be seen
+        if (this.round > 0) {
+            engine.setListener(listener);
+            engine.playRound();
+        }
+
+        String text = "Game " + (game + 1) + " of " + file.getGames()
+            + "   Round " + this.round + " of " + record.getRounds();
+        if (this.round == record.getRounds()) {
+            text += "   " + describeResult();
+        }
+        status = new Text(text, 10, 30, 20, "white", true);
+
+        canvas.pause(false);
+        canvas.redraw();
+    }
+
+    private String describeResult() {
+        switch (record.getResult()) {
+            case WarEngine.PLAYER: return "Player wins!";
+            case WarEngine.CPU: return "CPU wins!";
+            case WarEngine.DRAW: return "Draw, repeats every " + record.getCycleLength() + " rounds";
+            default: return "Not finished";
+        }
+    }
+
+    private void lineUpCards(int who, int x) {
+        int count = engine.getCardCount(who);
+        int y = canvas.getHeight() - deck.get(0).getHeight() - 10;
+
+        for (int i = count - 1; i >= 0; i--) {
+            Card card = deck.get(engine.getCard(who, i));
+            card.setPosition(x, y);
+            card.setFaceUp(false);
+            card.makeVisible();
+            y -= 5;
+        }
+    }
+
+    private void showCards(int playerCard, int cpuCard, int y) {
+        Card pCard = deck.get(playerCard);
+        Card cCard = deck.get(cpuCard);
+        pCard.setPosition(PLAYER_X, y);
+        cCard.setPosition(CPU_X, y);
+        pCard.turnFaceUp();
+        cCard.turnFaceUp();
+    }
+
+    private void placeFaceDown(int who, int card) {
+        if (card != WarEngine.NO_CARD) {
+            Card c = deck.get(card);
+            c.setFaceUp(false);
+            c.setPosition((who == WarEngine.PLAYER) ? POT_X - 10 : POT_X + 10, nextPotY);
+            c.makeInvisible();
+            c.makeVisible();
+            nextPotY += 5;
+        }
+    }
+
+    /**
+     * Handle a key being pressed
+     * @param key the code of the key
+     */
+    private void onKey(int key) {
+        if (file.getGames() == 0) {
+            return;
+        }
+        switch (key) {
+            case KeyEvent.VK_RIGHT: showRound(round + 1); break;
+            case KeyEvent.VK_LEFT: showRound(round - 1); break;
+            case KeyEvent.VK_PAGE_DOWN: showRound(round + 50); break;
+            case KeyEvent.VK_PAGE_UP: showRound(round - 50); break;
+            case KeyEvent.VK_HOME: showRound(0); break;
+            case KeyEvent.VK_END: showRound(record.getRounds()); break;
+            case KeyEvent.VK_DOWN:
+                if (game + 1 < file.getGames()) openGame(game + 1);
+                break;
+            case KeyEvent.VK_UP:
+                if (game > 0) openGame(game - 1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Handle the mouse being dragged: the whole width of the window covers
+     * the whole game
+     * @param x the x coordinate of the mouse position
+     */
+    private void onDrag(int x) {
+        if (file.getGames() == 0) {
+            return;
+        }
+        int target = (int) ((long) x * record.getRounds() / Math.max(1, canvas.getWidth() - 1));
+        if (target != round) {
+            showRound(target);
+        }
+    }
+
+    /**
+     * Replay a record file
+     * @param args the file to replay (default games.war)
+     */
+    public static void main(String[] args) throws IOException {
+        Path path = Path.of((args.length > 0) ? args[0] : "games.war");
+        new Replay(new RecordFile(path));
+    }
+}
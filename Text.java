@@ -8,6 +8,7 @@
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 
 public class Text
@@ -192,6 +193,19 @@ public class Text
         yPosition += distance;
     }
     
+    /**
+     * Change the text shown
+     * @param newText the new text
+     */
+    public void setText(String newText)
+    {
+        text = newText;
+        bounds = metrics.getStringBounds(text, Canvas.getGraphicsContext());
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
+    }
+
     /**
      * Change the color. Valid colors are "red", "yellow", "blue", "green",
      * "magenta", "cyan", "brown", "white", and "black", or rgb hex strings
@@ -202,6 +216,9 @@ public class Text
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
 
     /**
@@ -221,7 +238,10 @@ public class Text
             canvas.add(this, (g) -> {g.setColor(color);
                                      g.setFont(font);
                                      g.drawString(text, 
-                                                  xPosition, yPosition);});
+                                                  xPosition, yPosition);},
+                       () -> {Rectangle r = bounds.getBounds();
+                              r.translate(xPosition, yPosition);
+                              return r;});
         }
     }
 
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.awt.Rectangle;
 
 /**
  * A triangle that can be manipulated and that draws itself on a canvas.
@@ -216,6 +217,9 @@ public class Triangle
     public void changeColor(String newColor)
     {
         color = Canvas.getColor(newColor);
+        if (isVisible) {
+            Canvas.getCanvas().changed(this);
+        }
     }
 
     /**
@@ -268,7 +272,9 @@ public class Triangle
                                                       yPosition + height,
                                                       yPosition + height};
                                      g.setColor(color);
-                                     g.fillPolygon(xpoints, ypoints, 3);});                                             
+                                     g.fillPolygon(xpoints, ypoints, 3);},
+                       () -> new Rectangle(xPosition - (width/2), yPosition,
+                                           width, height));                                             
         }
     }
 
@@ -0,0 +1,114 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine.GameRandom;
+import engine.WarEngine;
+
+/**
+ * Measures the cost of each part of a game: shuffling, dealing, a plain
+ * round, a round decided by a war, and a whole game. Run with -prof gc to see
+ * how much each one allocates (it should be nothing).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    private static final long SEED = 42;
+
+    private WarEngine engine;
+    private GameRandom random;
+    private int[] cards;
+    private int[] warDeal;
+    private long game;
+
+    @Setup
+    public void setup() {
+        engine = new WarEngine();
+        random = new GameRandom(SEED, 0);
+        cards = new int[52];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = i;
+        }
+
+        // In card order both players start with an Ace and every card after
+        // ties too; swapping the computer's face-up war card ends it after a
+        // single war
+        warDeal = cards.clone();
+        warDeal[26 + 4] = 31;
+        warDeal[26 + 5] = 30;
+
+        engine.deal(SEED, game++);
+    }
+
+    /**
+     * Shuffle a whole deck
+     */
+    @Benchmark
+    public int[] shuffle() {
+        WarEngine.shuffle(cards, random);
+        return cards;
+    }
+
+    /**
+     * Shuffle and deal a new game
+     */
+    @Benchmark
+    public WarEngine deal() {
+        engine.deal(SEED, game++);
+        return engine;
+    }
+
+    /**
+     * Play one round of an ordinary game, dealing a new game whenever one ends
+     */
+    @Benchmark
+    public int playRound() {
+        if (engine.isOver()) {
+            engine.deal(SEED, game++);
+        }
+        return engine.playRound();
+    }
+
+    /**
+     * Deal a fixed order without shuffling; the baseline for war()
+     */
+    @Benchmark
+    public WarEngine dealFixed() {
+        engine.deal(warDeal);
+        return engine;
+    }
+
+    /**
+     * Deal a fixed order and play its first round, which is decided by a war.
+     * Subtract dealFixed() for the cost of the war itself.
+     */
+    @Benchmark
+    public int war() {
+        engine.deal(warDeal);
+        return engine.playRound();
+    }
+
+    /**
+     * Shuffle, deal and play a whole game
+     */
+    @Benchmark
+    public int playGame() {
+        engine.deal(SEED, game++);
+        return engine.playGame();
+    }
+}
@@ -0,0 +1,223 @@
+package engine;
+
+/**
+ * A deck of card ids that cards are drawn from the top of and added to the
+ * bottom of. The cards are kept as bytes in a ring buffer that never grows, so
+ * drawing is O(1), adding a pile of cards is a block copy and nothing is
+ * allocated once the queue has been created.
+ *
+ * The queue also keeps a hash of its contents up to date as cards come and
+ * go: the sum of key(card) * B^position, with the top card at position 0.
+ * Drawing subtracts the top card's key and divides by B (multiplying by its
+ * inverse mod 2^64), and adding multiplies a key by B^size, so the hash costs
+ * a multiply per card moved rather than a pass over the deck.
+ */
+public final class CardQueue {
+    private static final long BASE = 0x9e3779b97f4a7c15L;
+    private static final long BASE_INVERSE;
+    private static final long[] POWERS = new long[257];
+
+    static {
+        // Newton's method doubles the number of correct bits each step
+        long inverse = BASE;
+        for (int i = 0; i < 6; i++) {
+            inverse *= 2 - BASE * inverse;
+        }
+        BASE_INVERSE = inverse;
+
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * BASE;
+        }
+    }
+
+    private final byte[] cards;
+    private final int mask;
+    private final long[] keys;
+    private int head;
+    private int tail;
+    private long hash;
+
+    /**
+     * Create an empty queue that hashes each card by its id
+     * @param capacity the most cards the queue will ever need to hold (at most 256)
+     */
+    public CardQueue(int capacity) {
+        this(capacity, idKeys());
+    }
+
+    /**
+     * Create an empty queue that hashes each card with the given key. Cards
+     * with the same key are treated as the same card by the hash.
+     * @param capacity the most cards the queue will ever need to hold (at most 256)
+     * @param keys the hash key of each card, indexed by card id
+     */
+    public CardQueue(int capacity, long[] keys) {
+        if (capacity < 1 || capacity > 256) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 256");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.cards = new byte[Math.max(size, 1)];
+        this.mask = cards.length - 1;
+        this.keys = keys;
+    }
+
+    private static long[] idKeys() {
+        long[] keys = new long[256];
+        GameRandom random = new GameRandom(0, 0);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    /**
+     * Get the number of cards in the queue
+     * @return the number of cards
+     */
+    public int size() {
+        return tail - head;
+    }
+
+    /**
+     * Determine if the queue has no cards
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    /**
+     * Remove all the cards from the queue
+     */
+    public void clear() {
+        head = 0;
+        tail = 0;
+        hash = 0;
+    }
+
+    /**
+     * Make this queue hold the same cards as another, in the same order
+     * @param other a queue with the same capacity and keys as this one
+     */
+    public void copyFrom(CardQueue other) {
+        System.arraycopy(other.cards, 0, cards, 0, cards.length);
+        head = other.head;
+        tail = other.tail;
+        hash = other.hash;
+    }
+
+    /**
+     * Remove the top card. The queue must not be empty.
+     * @return the id of the card
+     */
+    public int draw() {
+        int card = cards[head++ & mask] & 0xFF;
+        hash = (hash - keys[card]) * BASE_INVERSE;
+        return card;
+    }
+
+    /**
+     * Look at a card without removing it
+     * @param index the position of the card, 0 being the top
+     * @return the id of the card
+     */
+    public int get(int index) {
+        return cards[(head + index) & mask] & 0xFF;
+    }
+
+    /**
+     * Add a card to the bottom of the queue
+     * @param card the id of the card
+     */
+    public void add(int card) {
+        hash += keys[card] * POWERS[size()];
+        cards[tail++ & mask] = (byte) card;
+    }
+
+    /**
+     * Add all the cards in another queue to the bottom of this one, keeping
+     * their order. The other queue is left unchanged, and must use the same
+     * keys as this one.
+     * @param other the cards to add
+     */
+    public void addAll(CardQueue other) {
+        hash += other.hash * POWERS[size()];
+
+        int n = other.size();
+        int from = other.head;
+        while (n > 0) {
+            int src = from & other.mask;
+            int dst = tail & mask;
+            int len = Math.min(n, Math.min(other.cards.length - src, cards.length - dst));
+            System.arraycopy(other.cards, src, cards, dst, len);
+            from += len;
+            tail += len;
+            n -= len;
+        }
+    }
+
+    /**
+     * Shuffle the cards in the queue with a Fisher-Yates shuffle
+     * @param random the source of randomness
+     */
+    public void shuffle(GameRandom random) {
+        for (int i = size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte temp = cards[(head + i) & mask];
+            cards[(head + i) & mask] = cards[(head + j) & mask];
+            cards[(head + j) & mask] = temp;
+        }
+        rehash();
+    }
+
+    /**
+     * Sort the cards by value, highest first. Cards of the same value keep
+     * their order. An insertion sort, since a pot rarely holds more than a
+     * few dozen cards.
+     * @param values the value of each card, indexed by card id
+     */
+    public void sortByValue(int[] values) {
+        for (int i = 1; i < size(); i++) {
+            byte card = cards[(head + i) & mask];
+            int value = values[card & 0xFF];
+            int j = i;
+            while (j > 0 && values[cards[(head + j - 1) & mask] & 0xFF] < value) {
+                cards[(head + j) & mask] = cards[(head + j - 1) & mask];
+                j--;
+            }
+            cards[(head + j) & mask] = card;
+        }
+        rehash();
+    }
+
+    // Work the hash out from scratch after the cards have been reordered
+    private void rehash() {
+        hash = 0;
+        for (int i = 0; i < size(); i++) {
+            hash += keys[get(i)] * POWERS[i];
+        }
+    }
+
+    /**
+     * Get the hash of the cards in the queue, in order. Queues that use the
+     * same keys and hold cards with the same keys in the same order have the
+     * same hash.
+     * @return the hash
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Copy the cards into an array
+     * @return the card ids, top of the queue first
+     */
+    public int[] toArray() {
+        int[] ids = new int[size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = get(i);
+        }
+        return ids;
+    }
+}
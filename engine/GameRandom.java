@@ -0,0 +1,79 @@
+package engine;
+
+/**
+ * A counter-based random number generator in the style of SplitMix64. The
+ * stream of numbers for a game depends only on the run's seed and the game's
+ * index, so any game of a run can be dealt again on its own, and a parallel
+ * run gives the same results no matter how the games are split between
+ * threads. There is no shared state, so threads never contend for it.
+ */
+public final class GameRandom {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long key;
+    private long counter;
+
+    /**
+     * Create a generator for one game of a run
+     * @param seed the seed of the run
+     * @param gameIndex the index of the game within the run
+     */
+    public GameRandom(long seed, long gameIndex) {
+        setGame(seed, gameIndex);
+    }
+
+    /**
+     * Restart the generator for a different game, without allocating a new one
+     * @param seed the seed of the run
+     * @param gameIndex the index of the game within the run
+     */
+    public void setGame(long seed, long gameIndex) {
+        key = mix(seed ^ mix(gameIndex * GOLDEN_GAMMA + GOLDEN_GAMMA));
+        counter = 0;
+    }
+
+    // The whole state, so an engine can save and restore a game part way
+    // through its stream
+    long getKey() {
+        return key;
+    }
+
+    long getCounter() {
+        return counter;
+    }
+
+    void setState(long key, long counter) {
+        this.key = key;
+        this.counter = counter;
+    }
+
+    /**
+     * Get the next 64 random bits
+     * @return a random long
+     */
+    public long nextLong() {
+        return mix(key + (++counter) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Get a random number from 0 (inclusive) to bound (exclusive), with every
+     * number equally likely
+     * @param bound the upper bound, which must be positive
+     * @return a random int
+     */
+    public int nextInt(int bound) {
+        // Reject the top partial range so no value is more likely than another
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33)) {
+        }
+        return r;
+    }
+
+    // The SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
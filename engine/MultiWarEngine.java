@@ -0,0 +1,476 @@
+package engine;
+
+/**
+ * The rules of War for 2 to 64 players. Each round every player still in the
+ * game turns over a card, and one pass over the cards finds the highest value
+ * and which players share it. If one player has it they take every card
+ * played; if several do, only they go to war, placing 3 cards face down and
+ * turning over another, until one of them is highest. A player who runs out
+ * of cards is knocked out, and is dropped from the list of players still in
+ * so later rounds never look at them again.
+ *
+ * As in WarEngine, a player at war always keeps one card to turn over, and
+ * if fewer than two of the players at war have a card left to turn over,
+ * nobody takes the pot. With two players each round is played by the same
+ * rules as WarEngine's, but the deal is not the same: the cards are dealt
+ * around the table one at a time, where WarEngine gives each player half of
+ * the deck, so the same seed and game index give a different game.
+ *
+ * Games with more players can repeat forever too, so the engine runs the same
+ * cycle detection as WarEngine over the hash of every player's deck. Nothing
+ * is allocated once the engine has been created.
+ */
+public class MultiWarEngine {
+    /** The fewest players a game can have */
+    public static final int MIN_PLAYERS = 2;
+    /** The most players a game can have */
+    public static final int MAX_PLAYERS = 64;
+    /** Returned when there is no winner (yet) */
+    public static final int NONE = -1;
+    /** Returned when the game is drawn because it repeats forever */
+    public static final int DRAW = -2;
+    /** Reported when a player has no card to place */
+    public static final int NO_CARD = -1;
+
+    private static final MultiWarListener SILENT = new MultiWarListener() {};
+
+    private final int players;
+    private final int[] values;
+    private final CardQueue[] decks;
+    private final CardQueue pot;
+    private final long[] seatKeys;
+    private final int[] order;
+    private final GameRandom random;
+    private MultiWarListener listener;
+
+    // The seats of the players still in the game, in seat order
+    private final int[] active;
+    private int activeCount;
+
+    // The seats of the players tied for the highest card
+    private final int[] tied;
+
+    private int rounds;
+    private int wars;
+    private int warDepth;
+    private int maxWarDepth;
+    private int maxPotSize;
+    private int lastWinner;
+
+    // Brent's cycle detection: the position saved at the last power of two
+    private long savedHash;
+    private int power;
+    private int sinceSaved;
+    private int cycleLength;
+
+    /**
+     * Create an engine for a number of players, with enough standard decks
+     * shuffled together to give everyone at least 3 cards
+     * @param players the number of players
+     */
+    public MultiWarEngine(int players) {
+        this(players, standardValues(players));
+    }
+
+    /**
+     * Create an engine for a number of players and a deck of cards with the
+     * given values
+     * @param players the number of players
+     * @param values the value of each card, indexed by card id (at least one
+     * card per player and at most 256 cards)
+     */
+    public MultiWarEngine(int players, int[] values) {
+        if (players < MIN_PLAYERS || players > MAX_PLAYERS) {
+            throw new IllegalArgumentException("A game needs " + MIN_PLAYERS + " to "
+                + MAX_PLAYERS + " players");
+        }
+        if (values.length < players || values.length > 256) {
+            throw new IllegalArgumentException("A deck needs 1 card per player and at most 256 cards");
+        }
+        this.players = players;
+        this.values = values.clone();
+
+        // Hash cards by value, as WarEngine does, and give each seat its own
+        // key so the same cards held by different players hash differently
+        GameRandom random = new GameRandom(0x5eed, 0);
+        long[] valueKeys = new long[256];
+        for (int i = 0; i < valueKeys.length; i++) {
+            valueKeys[i] = random.nextLong();
+        }
+        long[] keys = new long[values.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = valueKeys[values[i] & 0xFF];
+        }
+        seatKeys = new long[players];
+        for (int i = 0; i < players; i++) {
+            seatKeys[i] = random.nextLong() | 1;
+        }
+
+        decks = new CardQueue[players];
+        for (int i = 0; i < players; i++) {
+            decks[i] = new CardQueue(values.length, keys);
+        }
+        pot = new CardQueue(values.length, keys);
+        order = new int[values.length];
+        active = new int[players];
+        tied = new int[players];
+        this.random = new GameRandom(0, 0);
+        this.listener = SILENT;
+    }
+
+    /**
+     * Get the values of as many standard decks as it takes to give each
+     * player at least 3 cards, each deck in the same order as
+     * WarEngine.standardValues()
+     * @param players the number of players
+     * @return the value of each card, indexed by card id
+     */
+    public static int[] standardValues(int players) {
+        int[] deck = WarEngine.standardValues();
+        int decks = Math.min(256 / deck.length, (players * 3 + deck.length - 1) / deck.length);
+        int[] values = new int[deck.length * Math.max(1, decks)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = deck[i % deck.length];
+        }
+        return values;
+    }
+
+    /**
+     * Set the listener that is told about each event of the game
+     * @param listener the listener, or null for none
+     */
+    public void setListener(MultiWarListener listener) {
+        this.listener = (listener != null) ? listener : SILENT;
+    }
+
+    /**
+     * Shuffle the whole deck and deal it out to start a new game. The same
+     * seed and game index always give the same deal.
+     * @param seed the seed of the run
+     * @param gameIndex the index of the game within the run
+     */
+    public void deal(long seed, long gameIndex) {
+        random.setGame(seed, gameIndex);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        WarEngine.shuffle(order, random);
+        deal(order);
+    }
+
+    /**
+     * Start a new game, dealing the cards around the table one at a time
+     * from seat 0. If the cards don't divide evenly the first seats get one
+     * card more.
+     * @param order the card ids, top of the deck first
+     */
+    public void deal(int[] order) {
+        for (CardQueue deck : decks) {
+            deck.clear();
+        }
+        for (int i = 0; i < order.length; i++) {
+            decks[i % players].add(order[i]);
+        }
+
+        activeCount = 0;
+        for (int seat = 0; seat < players; seat++) {
+            if (!decks[seat].isEmpty()) {
+                active[activeCount++] = seat;
+            }
+        }
+
+        rounds = 0;
+        wars = 0;
+        warDepth = 0;
+        maxWarDepth = 0;
+        maxPotSize = 0;
+        lastWinner = NONE;
+
+        savedHash = positionHash();
+        power = 1;
+        sinceSaved = 0;
+        cycleLength = 0;
+    }
+
+    /**
+     * Determine if the game is over
+     * @return true if at most one player has cards left, or the game has
+     * been drawn
+     */
+    public boolean isOver() {
+        return activeCount < 2 || cycleLength > 0;
+    }
+
+    /**
+     * Get the winner of the game
+     * @return the winner's seat, DRAW, or NONE if the game is not over or
+     * everyone ran out of cards at once
+     */
+    public int getWinner() {
+        if (cycleLength > 0) {
+            return DRAW;
+        } else if (activeCount == 1) {
+            return active[0];
+        }
+        return NONE;
+    }
+
+    /**
+     * Play rounds until the game is over
+     * @return the winner of the game
+     */
+    public int playGame() {
+        while (!isOver()) {
+            playRound();
+        }
+        return getWinner();
+    }
+
+    /**
+     * Play one round: every player turns over their top card and the highest
+     * card takes them all. Players tied for the highest card go to war.
+     * @return the seat of the player who won the round, or NONE if nobody did
+     */
+    public int playRound() {
+        if (isOver()) {
+            return NONE;
+        }
+        rounds++;
+
+        lastWinner = playCards();
+        if (warDepth > 0) {
+            maxWarDepth = Math.max(maxWarDepth, warDepth);
+            maxPotSize = Math.max(maxPotSize, pot.size());
+        }
+
+        // Knock out anyone left with no cards, keeping the rest in seat order
+        int remaining = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int seat = active[i];
+            if (decks[seat].isEmpty()) {
+                listener.playerOut(seat);
+            } else {
+                active[remaining++] = seat;
+            }
+        }
+        activeCount = remaining;
+
+        checkForCycle();
+        return lastWinner;
+    }
+
+    private int playCards() {
+        pot.clear();
+
+        // Everyone turns over a card; keep the highest value and who has it
+        int best = Integer.MIN_VALUE;
+        int tiedCount = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int seat = active[i];
+            int card = decks[seat].draw();
+            pot.add(card);
+            listener.cardPlayed(seat, card);
+
+            int value = values[card];
+            if (value > best) {
+                best = value;
+                tiedCount = 0;
+            }
+            if (value == best) {
+                tied[tiedCount++] = seat;
+            }
+        }
+
+        // Only the tied players go to war, in a loop rather than by recursion
+        warDepth = 0;
+        while (tiedCount > 1) {
+            warDepth++;
+            wars++;
+            listener.warStarted(tiedCount);
+
+            // Each player places 3 face-down cards, but always keeps one to play
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < tiedCount; j++) {
+                    int seat = tied[j];
+                    int card = NO_CARD;
+                    if (decks[seat].size() > 1) {
+                        card = decks[seat].draw();
+                        pot.add(card);
+                    }
+                    listener.faceDown(seat, card);
+                }
+            }
+
+            // Each player places one face-up card (if they have any left)
+            int playing = 0;
+            for (int j = 0; j < tiedCount; j++) {
+                if (!decks[tied[j]].isEmpty()) {
+                    playing++;
+                }
+            }
+            if (playing < 2) {
+                listener.potDiscarded();
+                return NONE;
+            }
+
+            // The tied list is refilled in place; it never gets ahead of the
+            // player being looked at
+            best = Integer.MIN_VALUE;
+            int stillTied = 0;
+            for (int j = 0; j < tiedCount; j++) {
+                int seat = tied[j];
+                if (decks[seat].isEmpty()) {
+                    continue;
+                }
+                int card = decks[seat].draw();
+                pot.add(card);
+                listener.warCardPlayed(seat, card);
+
+                int value = values[card];
+                if (value > best) {
+                    best = value;
+                    stillTied = 0;
+                }
+                if (value == best) {
+                    tied[stillTied++] = seat;
+                }
+            }
+            tiedCount = stillTied;
+        }
+
+        int winner = tied[0];
+        decks[winner].addAll(pot);
+        listener.potWon(winner);
+        return winner;
+    }
+
+    private long positionHash() {
+        long h = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int seat = active[i];
+            h += decks[seat].hash() * seatKeys[seat];
+        }
+        return h ^ (h >>> 31);
+    }
+
+    private void checkForCycle() {
+        long hash = positionHash();
+        sinceSaved++;
+        if (hash == savedHash) {
+            cycleLength = sinceSaved;
+        } else if (sinceSaved == power) {
+            savedHash = hash;
+            power <<= 1;
+            sinceSaved = 0;
+        }
+    }
+
+    /**
+     * Get the number of players the engine was made for
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * Get the number of players still in the game
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Get the seat of one of the players still in the game
+     * @param index the position among the players still in, in seat order
+     * @return the player's seat
+     */
+    public int getActiveSeat(int index) {
+        return active[index];
+    }
+
+    /**
+     * Get the cards a player holds
+     * @param seat the player's seat
+     * @return the player's card ids, top of the deck first
+     */
+    public int[] getCards(int seat) {
+        return decks[seat].toArray();
+    }
+
+    /**
+     * Look at one of the cards a player holds, without copying their deck
+     * @param seat the player's seat
+     * @param index the position of the card, 0 being the top of the deck
+     * @return the id of the card
+     */
+    public int getCard(int seat, int index) {
+        return decks[seat].get(index);
+    }
+
+    /**
+     * Get the number of cards a player holds
+     * @param seat the player's seat
+     * @return the number of cards in the player's deck
+     */
+    public int getCardCount(int seat) {
+        return decks[seat].size();
+    }
+
+    /**
+     * Get the winner of the last round played
+     * @return the winner's seat, or NONE if nobody won it
+     */
+    public int getLastWinner() {
+        return lastWinner;
+    }
+
+    /**
+     * Get the number of wars in the last round played
+     * @return the depth of the last round's chain of wars
+     */
+    public int getWarDepth() {
+        return warDepth;
+    }
+
+    /**
+     * Get the longest chain of wars in any round since the deal
+     * @return the deepest war depth
+     */
+    public int getMaxWarDepth() {
+        return maxWarDepth;
+    }
+
+    /**
+     * Get the biggest pot won or lost in a war since the deal
+     * @return the most cards in a war's pot, or 0 if there has been no war
+     */
+    public int getMaxPotSize() {
+        return maxPotSize;
+    }
+
+    /**
+     * Get the number of rounds it takes a drawn game to come back to the same
+     * position
+     * @return the length of the cycle, or 0 if the game is not drawn
+     */
+    public int getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Get the number of rounds played since the deal
+     * @return the number of rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Get the number of wars fought since the deal, counting each tie in a
+     * chain of wars separately
+     * @return the number of wars
+     */
+    public int getWars() {
+        return wars;
+    }
+}
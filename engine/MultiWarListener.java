@@ -0,0 +1,55 @@
+package engine;
+
+/**
+ * Receives the events of a game on a MultiWarEngine, in the order they
+ * happen. Seats are numbered from 0 and keep their number for the whole
+ * game, even after other players are knocked out. Every method does nothing
+ * unless it is overridden.
+ */
+public interface MultiWarListener {
+    /**
+     * A player has turned over their card at the start of a round
+     * @param seat the player's seat
+     * @param card the id of the card
+     */
+    default void cardPlayed(int seat, int card) {}
+
+    /**
+     * Two or more players tied for the highest card, and go to war
+     * @param players the number of players in the war
+     */
+    default void warStarted(int players) {}
+
+    /**
+     * A player in the war has placed a card face down in the pot
+     * @param seat the player's seat
+     * @param card the id of the card, or MultiWarEngine.NO_CARD if the player
+     * had to keep their last card to play
+     */
+    default void faceDown(int seat, int card) {}
+
+    /**
+     * A player in the war has turned over their next card
+     * @param seat the player's seat
+     * @param card the id of the card
+     */
+    default void warCardPlayed(int seat, int card) {}
+
+    /**
+     * A player has taken the pot
+     * @param seat the player's seat
+     */
+    default void potWon(int seat) {}
+
+    /**
+     * Fewer than two of the players at war had a card left to turn over, so
+     * nobody takes the pot
+     */
+    default void potDiscarded() {}
+
+    /**
+     * A player has run out of cards and is out of the game
+     * @param seat the player's seat
+     */
+    default void playerOut(int seat) {}
+}
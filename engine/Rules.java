@@ -0,0 +1,209 @@
+package engine;
+
+/**
+ * A variant of the rules of War. Rules are immutable and are fixed when an
+ * engine is created; the engine copies them into final fields of its own, so
+ * the variant costs a predictable branch in the rounds rather than a call
+ * through an interface that the JIT would have to guess at.
+ */
+public final class Rules {
+    /** How the winner of a pot adds it to the bottom of their deck */
+    public enum PotOrder {
+        /** In the order the cards were played */
+        FIXED,
+        /** Shuffled first */
+        SHUFFLED,
+        /** Highest value first */
+        SORTED
+    }
+
+    /** What happens when a player doesn't have enough cards for a war */
+    public enum OutOfCards {
+        /**
+         * They place what face-down cards they can and keep their last card
+         * to turn over; if they have none at all, nobody takes the pot
+         */
+        KEEP_LAST_CARD,
+        /**
+         * Unless both are short, the player without enough cards for the
+         * whole war puts the rest of their cards in the pot and loses it
+         */
+        LOSE_WAR
+    }
+
+    /** The rules the game has always been played by */
+    public static final Rules STANDARD = new Rules(3, PotOrder.FIXED, false, OutOfCards.KEEP_LAST_CARD);
+
+    private final int faceDownCards;
+    private final PotOrder potOrder;
+    private final boolean aceLow;
+    private final OutOfCards outOfCards;
+
+    /**
+     * Create a set of rules
+     * @param faceDownCards the number of cards each player places face down
+     * in a war
+     * @param potOrder how the winner picks up a pot
+     * @param aceLow true if aces are the lowest card rather than the highest
+     * @param outOfCards what happens when a player runs out in a war
+     */
+    public Rules(int faceDownCards, PotOrder potOrder, boolean aceLow, OutOfCards outOfCards) {
+        if (faceDownCards < 0) {
+            throw new IllegalArgumentException("The number of face-down cards cannot be negative");
+        }
+        this.faceDownCards = faceDownCards;
+        this.potOrder = potOrder;
+        this.aceLow = aceLow;
+        this.outOfCards = outOfCards;
+    }
+
+    /**
+     * Read a set of rules from a config of space separated settings, any of
+     * which can be left out to keep the standard rule:
+     * <pre>
+     *   down=3             face-down cards in a war
+     *   pot=fixed          or shuffled, sorted
+     *   ace=high           or low
+     *   short=keep         or lose: what a player short of cards for a war does
+     * </pre>
+     * Other settings are ignored, so a config can carry more than rules.
+     * @param config the settings
+     * @return the rules
+     * @throws IllegalArgumentException if a setting has a value it can't take
+     */
+    public static Rules parse(String config) {
+        int faceDownCards = STANDARD.faceDownCards;
+        PotOrder potOrder = STANDARD.potOrder;
+        boolean aceLow = STANDARD.aceLow;
+        OutOfCards outOfCards = STANDARD.outOfCards;
+
+        for (String setting : config.trim().split("\\s+")) {
+            int equals = setting.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String key = setting.substring(0, equals).toLowerCase();
+            String value = setting.substring(equals + 1).toLowerCase();
+            try {
+                switch (key) {
+                    case "down":
+                        faceDownCards = Integer.parseInt(value);
+                        break;
+                    case "pot":
+                        potOrder = PotOrder.valueOf(value.toUpperCase());
+                        break;
+                    case "ace":
+                        if (!value.equals("high") && !value.equals("low")) {
+                            throw new IllegalArgumentException(value);
+                        }
+                        aceLow = value.equals("low");
+                        break;
+                    case "short":
+                        outOfCards = value.equals("lose") ? OutOfCards.LOSE_WAR
+                            : value.equals("keep") ? OutOfCards.KEEP_LAST_CARD
+                            : OutOfCards.valueOf(value.toUpperCase());
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Bad setting " + setting, e);
+            }
+        }
+        return new Rules(faceDownCards, potOrder, aceLow, outOfCards);
+    }
+
+    /**
+     * Get the values of the deck described by a config, which can give the
+     * deck as well as the rules:
+     * <pre>
+     *   ranks=13           ranks in each suit, the highest being the ace
+     *   suits=4            suits in the deck
+     * </pre>
+     * Every suit has the same ranks, valued 1 for the lowest up to the ace,
+     * which is highest.
+     * @param config the config, where only ranks and suits are read
+     * @return the value of each card, indexed by card id
+     * @throws IllegalArgumentException if the deck would be empty or have more
+     * than 256 cards
+     */
+    public static int[] deckValues(String config) {
+        int ranks = 13;
+        int suits = 4;
+        for (String setting : config.trim().split("\\s+")) {
+            if (setting.startsWith("ranks=")) {
+                ranks = Integer.parseInt(setting.substring(6));
+            } else if (setting.startsWith("suits=")) {
+                suits = Integer.parseInt(setting.substring(6));
+            }
+        }
+        if (ranks < 1 || suits < 1 || ranks * suits > 256) {
+            throw new IllegalArgumentException("A deck needs 1 to 256 cards");
+        }
+
+        // Laid out like WarEngine.standardValues(): each suit from ace up
+        int[] values = new int[ranks * suits];
+        for (int suit = 0; suit < suits; suit++) {
+            values[suit * ranks] = ranks;
+            for (int rank = 1; rank < ranks; rank++) {
+                values[suit * ranks + rank] = rank;
+            }
+        }
+        return values;
+    }
+
+    public int getFaceDownCards() {
+        return faceDownCards;
+    }
+
+    public PotOrder getPotOrder() {
+        return potOrder;
+    }
+
+    public boolean isAceLow() {
+        return aceLow;
+    }
+
+    public OutOfCards getOutOfCards() {
+        return outOfCards;
+    }
+
+    /**
+     * Apply the rules to the values of a deck. Aces are the highest value in
+     * the deck, as in WarEngine.standardValues() and Card.getValue(), so ace
+     * low makes them lower than every other card.
+     * @param values the value of each card, indexed by card id
+     * @return the values to play with, in a new array
+     */
+    public int[] applyTo(int[] values) {
+        int[] applied = values.clone();
+        if (aceLow && applied.length > 0) {
+            int highest = Integer.MIN_VALUE;
+            int lowest = Integer.MAX_VALUE;
+            for (int value : applied) {
+                highest = Math.max(highest, value);
+                lowest = Math.min(lowest, value);
+            }
+            for (int i = 0; i < applied.length; i++) {
+                if (applied[i] == highest) {
+                    applied[i] = lowest - 1;
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Determine if a game played by these rules is fully decided by its deal.
+     * Only then does a repeated position mean the game repeats forever.
+     */
+    public boolean isDeterministic() {
+        return potOrder != PotOrder.SHUFFLED;
+    }
+
+    @Override
+    public String toString() {
+        return faceDownCards + " down, " + potOrder.name().toLowerCase() + " pot, ace "
+            + (aceLow ? "low" : "high") + ", " + outOfCards.name().toLowerCase().replace('_', ' ');
+    }
+}
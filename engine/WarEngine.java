@@ -0,0 +1,718 @@
+package engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The rules of War, without any graphics. Cards are identified by an integer
+ * id (their index in the deck) and only their value matters to the rules, so
+ * a whole game can be played in a few microseconds. The Game class drives an
+ * engine and animates its events; simulations use it directly.
+ *
+ * Some deals never finish: the cards keep coming back around in the same
+ * order. The decks hash themselves by card value as cards move, and after
+ * each round the engine runs Brent's cycle detection over the hash of the
+ * whole position, so a repeating game is called a draw within about two
+ * cycles of it starting to repeat. Games whose pots are shuffled can't
+ * repeat forever, and aren't checked.
+ *
+ * Variants of the rules are given as a Rules object when the engine is
+ * created and copied into final fields, so every variant runs the same code
+ * with no calls the JIT can't inline.
+ */
+public class WarEngine {
+    /** Identifies the player */
+    public static final int PLAYER = 0;
+    /** Identifies the computer */
+    public static final int CPU = 1;
+    /** Returned when there is no winner (yet) */
+    public static final int NONE = -1;
+    /** Returned when the game is drawn because it repeats forever */
+    public static final int DRAW = 2;
+    /** Reported when a player has no card to place */
+    public static final int NO_CARD = -1;
+
+    private static final WarListener SILENT = new WarListener() {};
+
+    private final Rules rules;
+    private final int[] values;
+    private final CardQueue playerDeck;
+    private final CardQueue cpuDeck;
+    private final CardQueue pot;
+    private final int[] order;
+    private final GameRandom random;
+    private WarListener listener;
+
+    // The rules, flattened into plain fields the rounds can branch on
+    private final int faceDownCards;
+    private final boolean shufflePot;
+    private final boolean sortPot;
+    private final boolean loseWhenShort;
+    private final boolean detectCycles;
+
+    private int rounds;
+    private int wars;
+    private int warDepth;
+    private int maxWarDepth;
+    private int maxPotSize;
+
+    // Brent's cycle detection: the position saved at the last power of two
+    private long savedHash;
+    private int power;
+    private int sinceSaved;
+    private int cycleLength;
+
+    /**
+     * Create an engine for a standard 52 card deck
+     */
+    public WarEngine() {
+        this(standardValues());
+    }
+
+    /**
+     * Create an engine for a standard 52 card deck played by a variant of the
+     * rules
+     * @param rules the rules to play by
+     */
+    public WarEngine(Rules rules) {
+        this(standardValues(), rules);
+    }
+
+    /**
+     * Create an engine for a deck of cards with the given values
+     * @param values the value of each card, indexed by card id (at most 256 cards)
+     */
+    public WarEngine(int[] values) {
+        this(values, Rules.STANDARD);
+    }
+
+    /**
+     * Create an engine for a deck of cards with the given values, played by
+     * a variant of the rules
+     * @param values the value of each card, indexed by card id (at most 256 cards)
+     * @param rules the rules to play by
+     */
+    public WarEngine(int[] values, Rules rules) {
+        this.rules = rules;
+        this.values = rules.applyTo(values);
+        this.faceDownCards = rules.getFaceDownCards();
+        this.shufflePot = rules.getPotOrder() == Rules.PotOrder.SHUFFLED;
+        this.sortPot = rules.getPotOrder() == Rules.PotOrder.SORTED;
+        this.loseWhenShort = rules.getOutOfCards() == Rules.OutOfCards.LOSE_WAR;
+        this.detectCycles = rules.isDeterministic();
+
+        long[] keys = valueKeys(this.values);
+        this.playerDeck = new CardQueue(values.length, keys);
+        this.cpuDeck = new CardQueue(values.length, keys);
+        this.pot = new CardQueue(values.length, keys);
+        this.order = new int[values.length];
+        this.random = new GameRandom(0, 0);
+        this.listener = SILENT;
+    }
+
+    /**
+     * Get the hash key of each card. Cards are hashed by value, so positions
+     * that differ only in suits count as the same position; they play out
+     * the same way.
+     * @param values the value of each card, indexed by card id
+     * @return the key of each card, indexed by card id
+     */
+    private static long[] valueKeys(int[] values) {
+        GameRandom random = new GameRandom(0x5eed, 0);
+        long[] valueKeys = new long[256];
+        for (int i = 0; i < valueKeys.length; i++) {
+            valueKeys[i] = random.nextLong();
+        }
+        long[] keys = new long[values.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = valueKeys[values[i] & 0xFF];
+        }
+        return keys;
+    }
+
+    /**
+     * Get the values of a standard deck, in the same order as Card.loadCards()
+     * creates the cards: Hearts, Diamonds, Clubs, Spades, each Ace to King.
+     * Aces are high, so the value of a card is 1..12 for 2..King and 13 for Ace,
+     * the same as Card.getValue().
+     * @return the value of each card, indexed by card id
+     */
+    public static int[] standardValues() {
+        int[] values = new int[52];
+        for (int suit = 0; suit < 4; suit++) {
+            for (int rank = 1; rank <= 13; rank++) {
+                values[suit * 13 + rank - 1] = (rank != 1) ? rank - 1 : 13;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the rules the engine plays by
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Set the listener that is told about each event of the game
+     * @param listener the listener, or null for none
+     */
+    public void setListener(WarListener listener) {
+        this.listener = (listener != null) ? listener : SILENT;
+    }
+
+    /**
+     * Shuffle a deck in place with a Fisher-Yates shuffle, so that every order
+     * is equally likely
+     * @param cards the card ids to shuffle
+     * @param random the source of randomness
+     */
+    public static void shuffle(int[] cards, GameRandom random) {
+        for (int i = cards.length - 1; i > 0; i--) {
+            int randomIndex = random.nextInt(i + 1);
+            int temp = cards[i];
+            cards[i] = cards[randomIndex];
+            cards[randomIndex] = temp;
+        }
+    }
+
+    /**
+     * Shuffle the whole deck and deal it out to start a new game. The same
+     * seed and game index always give the same deal.
+     * @param seed the seed of the run
+     * @param gameIndex the index of the game within the run
+     */
+    public void deal(long seed, long gameIndex) {
+        random.setGame(seed, gameIndex);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        shuffle(order, random);
+        deal(order);
+    }
+
+    /**
+     * Start a new game, giving the first half of the cards to the player and
+     * the second half to the computer. Only the values of the cards matter to
+     * the rules, so an id may appear more than once; an engine whose values
+     * are 0, 1, 2... can be dealt card values directly.
+     * @param order the card ids, top of the deck first
+     */
+    public void deal(int[] order) {
+        playerDeck.clear();
+        cpuDeck.clear();
+        for (int i = 0; i < order.length / 2; i++) {
+            playerDeck.add(order[i]);
+        }
+        for (int i = order.length / 2; i < order.length; i++) {
+            cpuDeck.add(order[i]);
+        }
+        startGame();
+    }
+
+    /**
+     * Start a new game from a position that was not necessarily dealt evenly,
+     * such as one taken over from part way through another game
+     * @param playerCards the player's card ids, top of the deck first
+     * @param playerCount the number of cards the player holds
+     * @param cpuCards the computer's card ids, top of the deck first
+     * @param cpuCount the number of cards the computer holds
+     */
+    public void deal(int[] playerCards, int playerCount, int[] cpuCards, int cpuCount) {
+        playerDeck.clear();
+        cpuDeck.clear();
+        for (int i = 0; i < playerCount; i++) {
+            playerDeck.add(playerCards[i]);
+        }
+        for (int i = 0; i < cpuCount; i++) {
+            cpuDeck.add(cpuCards[i]);
+        }
+        startGame();
+    }
+
+    private void startGame() {
+        rounds = 0;
+        wars = 0;
+        warDepth = 0;
+        maxWarDepth = 0;
+        maxPotSize = 0;
+
+        savedHash = positionHash();
+        power = 1;
+        sinceSaved = 0;
+        cycleLength = 0;
+    }
+
+    /**
+     * Put this engine in exactly the same state as another, part way through
+     * a game, so that it plays on the same way. The listener is not copied.
+     * @param other an engine for the same deck of cards
+     */
+    public void copyFrom(WarEngine other) {
+        playerDeck.copyFrom(other.playerDeck);
+        cpuDeck.copyFrom(other.cpuDeck);
+        pot.copyFrom(other.pot);
+        rounds = other.rounds;
+        wars = other.wars;
+        warDepth = other.warDepth;
+        maxWarDepth = other.maxWarDepth;
+        maxPotSize = other.maxPotSize;
+        savedHash = other.savedHash;
+        power = other.power;
+        sinceSaved = other.sinceSaved;
+        cycleLength = other.cycleLength;
+    }
+
+    /**
+     * Write the state of the game to a buffer, compactly enough to checkpoint
+     * often: the decks and pot are packed at as few bits per card as the deck
+     * needs (6 for a standard deck) and the counters are varints, so a
+     * standard game between rounds takes about 60 bytes. The rules are saved
+     * so a game is never restored into an engine that plays differently, and
+     * when pots are shuffled so is the state of the random numbers that
+     * shuffle them. The listener is not saved.
+     *
+     * <pre>
+     *   number of cards in the deck
+     *   face-down cards in a war, then the other rules as one byte: pot order
+     *       in bits 0-1, ace low in bit 2, out of cards in bit 3
+     *   cards held by the player, the computer and in the pot
+     *   the card ids, player's then computer's then pot's, bit packed low
+     *       bits first
+     *   rounds, wars, war depth, max war depth, max pot size
+     *   saved position hash (8 bytes, little-endian), power, rounds since
+     *       saved, cycle length
+     *   only if pots are shuffled: the random key and counter (8 bytes each,
+     *       little-endian)
+     * </pre>
+     * Every number is an unsigned LEB128 varint unless noted.
+     * @param buffer the buffer to write to, which needs about 100 bytes free
+     * for a standard deck
+     */
+    public void save(ByteBuffer buffer) {
+        putVarint(buffer, values.length);
+        putVarint(buffer, faceDownCards);
+        buffer.put((byte) rulesFlags());
+        putVarint(buffer, playerDeck.size());
+        putVarint(buffer, cpuDeck.size());
+        putVarint(buffer, pot.size());
+
+        int bits = bitsPerCard();
+        long packed = 0;
+        int filled = 0;
+        for (CardQueue queue : new CardQueue[] { playerDeck, cpuDeck, pot }) {
+            for (int i = 0; i < queue.size(); i++) {
+                packed |= (long) queue.get(i) << filled;
+                filled += bits;
+                if (filled >= 8) {
+                    buffer.put((byte) packed);
+                    packed >>>= 8;
+                    filled -= 8;
+                }
+            }
+        }
+        if (filled > 0) {
+            buffer.put((byte) packed);
+        }
+
+        putVarint(buffer, rounds);
+        putVarint(buffer, wars);
+        putVarint(buffer, warDepth);
+        putVarint(buffer, maxWarDepth);
+        putVarint(buffer, maxPotSize);
+        putLong(buffer, savedHash);
+        putVarint(buffer, power);
+        putVarint(buffer, sinceSaved);
+        putVarint(buffer, cycleLength);
+        if (shufflePot) {
+            putLong(buffer, random.getKey());
+            putLong(buffer, random.getCounter());
+        }
+    }
+
+    /**
+     * Put the game back in a state written by save, so that it plays on
+     * exactly as it would have. The listener is not changed. The whole state
+     * is read and checked before any of it is used, so a state that can't be
+     * restored leaves the game as it was.
+     * @param buffer a buffer positioned at the start of the state; it is left
+     * positioned just after it
+     * @throws IllegalArgumentException if the state was saved from an engine
+     * with a different deck or rules, or is corrupt
+     * @throws java.nio.BufferUnderflowException if the state is cut short
+     */
+    public void restore(ByteBuffer buffer) {
+        int cards = getVarint(buffer);
+        if (cards != values.length) {
+            throw new IllegalArgumentException("Saved with " + cards + " cards, not " + values.length);
+        }
+        int savedFaceDown = getVarint(buffer);
+        int savedFlags = buffer.get() & 0xFF;
+        if (savedFaceDown != faceDownCards || savedFlags != rulesFlags()) {
+            throw new IllegalArgumentException("Saved with different rules, not " + rules);
+        }
+
+        // Decks can only hold the cards of the deck, though cards lost in a
+        // war leave them holding fewer; the pot is what the last round played
+        int playerCount = getVarint(buffer);
+        int cpuCount = getVarint(buffer);
+        int potCount = getVarint(buffer);
+        if (playerCount < 0 || cpuCount < 0 || potCount < 0
+                || playerCount + cpuCount > cards || potCount > cards) {
+            throw new IllegalArgumentException("Saved with " + playerCount + ", " + cpuCount
+                + " and " + potCount + " cards in a deck of " + cards);
+        }
+
+        int[] ids = new int[playerCount + cpuCount + potCount];
+        int bits = bitsPerCard();
+        int mask = (1 << bits) - 1;
+        long packed = 0;
+        int filled = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (filled < bits) {
+                packed |= (buffer.get() & 0xFFL) << filled;
+                filled += 8;
+            }
+            ids[i] = (int) (packed & mask);
+            packed >>>= bits;
+            filled -= bits;
+            if (ids[i] >= cards) {
+                throw new IllegalArgumentException("Saved with card " + ids[i]
+                    + " in a deck of " + cards);
+            }
+        }
+
+        int savedRounds = getVarint(buffer);
+        int savedWars = getVarint(buffer);
+        int savedWarDepth = getVarint(buffer);
+        int savedMaxWarDepth = getVarint(buffer);
+        int savedMaxPotSize = getVarint(buffer);
+        long savedPositionHash = getLong(buffer);
+        int savedPower = getVarint(buffer);
+        int savedSinceSaved = getVarint(buffer);
+        int savedCycleLength = getVarint(buffer);
+        if (savedRounds < 0 || savedWars < 0 || savedWarDepth < 0
+                || savedMaxWarDepth < savedWarDepth || savedMaxPotSize < 0
+                || savedPower <= 0 || Integer.bitCount(savedPower) != 1
+                || savedSinceSaved < 0 || savedSinceSaved > savedPower || savedCycleLength < 0) {
+            throw new IllegalArgumentException("Saved with impossible counters");
+        }
+        long randomKey = 0;
+        long randomCounter = 0;
+        if (shufflePot) {
+            randomKey = getLong(buffer);
+            randomCounter = getLong(buffer);
+        }
+
+        playerDeck.clear();
+        cpuDeck.clear();
+        pot.clear();
+        for (int i = 0; i < ids.length; i++) {
+            if (i < playerCount) {
+                playerDeck.add(ids[i]);
+            } else if (i < playerCount + cpuCount) {
+                cpuDeck.add(ids[i]);
+            } else {
+                pot.add(ids[i]);
+            }
+        }
+        rounds = savedRounds;
+        wars = savedWars;
+        warDepth = savedWarDepth;
+        maxWarDepth = savedMaxWarDepth;
+        maxPotSize = savedMaxPotSize;
+        savedHash = savedPositionHash;
+        power = savedPower;
+        sinceSaved = savedSinceSaved;
+        cycleLength = savedCycleLength;
+        if (shufflePot) {
+            random.setState(randomKey, randomCounter);
+        }
+    }
+
+    // The rules other than the face-down cards, packed into one byte
+    private int rulesFlags() {
+        return rules.getPotOrder().ordinal() | (rules.isAceLow() ? 4 : 0)
+            | rules.getOutOfCards().ordinal() << 3;
+    }
+
+    // The fewest bits that can hold any card id
+    private int bitsPerCard() {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(values.length - 1));
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static void putLong(ByteBuffer buffer, long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer.put((byte) (value >>> (8 * i)));
+        }
+    }
+
+    private static long getLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (buffer.get() & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Determine if the game is over
+     * @return true if either player has run out of cards, or the game has
+     * been drawn
+     */
+    public boolean isOver() {
+        return playerDeck.isEmpty() || cpuDeck.isEmpty() || cycleLength > 0;
+    }
+
+    /**
+     * Get the winner of the game. The computer wins if the player has run out
+     * of cards, even if the computer has too.
+     * @return PLAYER, CPU, DRAW, or NONE if the game is not over
+     */
+    public int getWinner() {
+        if (cycleLength > 0) {
+            return DRAW;
+        } else if (playerDeck.isEmpty()) {
+            return CPU;
+        } else if (cpuDeck.isEmpty()) {
+            return PLAYER;
+        }
+        return NONE;
+    }
+
+    /**
+     * Play rounds until the game is over
+     * @return the winner of the game
+     */
+    public int playGame() {
+        while (!isOver()) {
+            playRound();
+        }
+        return getWinner();
+    }
+
+    /**
+     * Play one round: both players turn over their top card and the higher
+     * card takes both. Ties go to war.
+     * @return the player who won the round, or NONE if nobody did
+     */
+    public int playRound() {
+        if (isOver()) {
+            return NONE;
+        }
+        rounds++;
+
+        int winner = playCards();
+        if (warDepth > 0) {
+            maxWarDepth = Math.max(maxWarDepth, warDepth);
+            maxPotSize = Math.max(maxPotSize, pot.size());
+        }
+        if (detectCycles) {
+            checkForCycle();
+        }
+        return winner;
+    }
+
+    private int playCards() {
+        int playerCard = playerDeck.draw();
+        int cpuCard = cpuDeck.draw();
+
+        // The pot is reused every round; it can never hold more than the deck
+        pot.clear();
+        pot.add(playerCard);
+        pot.add(cpuCard);
+        listener.cardsPlayed(playerCard, cpuCard);
+
+        // Each tie is one more level of war, played in this loop rather than
+        // by recursion so a long chain of wars costs the same per level
+        warDepth = 0;
+        while (values[playerCard] == values[cpuCard]) {
+            warDepth++;
+            wars++;
+            listener.warStarted();
+
+            // A player without enough cards for the whole war may lose it
+            if (loseWhenShort) {
+                boolean playerShort = playerDeck.size() <= faceDownCards;
+                boolean cpuShort = cpuDeck.size() <= faceDownCards;
+                if (playerShort != cpuShort) {
+                    int loser = playerShort ? PLAYER : CPU;
+                    CardQueue deck = playerShort ? playerDeck : cpuDeck;
+                    while (!deck.isEmpty()) {
+                        int card = deck.draw();
+                        pot.add(card);
+                        listener.faceDown(loser, card);
+                    }
+                    return takePot(playerShort ? CPU : PLAYER);
+                }
+            }
+
+            // Each player places their face-down cards, but always keeps one
+            // to play
+            for (int i = 0; i < faceDownCards; i++) {
+                int card = NO_CARD;
+                if (playerDeck.size() > 1) {
+                    card = playerDeck.draw();
+                    pot.add(card);
+                }
+                listener.faceDown(PLAYER, card);
+
+                card = NO_CARD;
+                if (cpuDeck.size() > 1) {
+                    card = cpuDeck.draw();
+                    pot.add(card);
+                }
+                listener.faceDown(CPU, card);
+            }
+
+            // Each player places one face-up card (if they have any left)
+            if (playerDeck.isEmpty() || cpuDeck.isEmpty()) {
+                listener.potDiscarded();
+                return NONE;
+            }
+
+            playerCard = playerDeck.draw();
+            cpuCard = cpuDeck.draw();
+            pot.add(playerCard);
+            pot.add(cpuCard);
+            listener.warCardsPlayed(playerCard, cpuCard);
+        }
+
+        return takePot((values[playerCard] > values[cpuCard]) ? PLAYER : CPU);
+    }
+
+    private int takePot(int who) {
+        if (shufflePot) {
+            pot.shuffle(random);
+        } else if (sortPot) {
+            pot.sortByValue(values);
+        }
+        ((who == PLAYER) ? playerDeck : cpuDeck).addAll(pot);
+        listener.potWon(who);
+        return who;
+    }
+
+    private long positionHash() {
+        long h = playerDeck.hash() * 0xbf58476d1ce4e5b9L + cpuDeck.hash();
+        return h ^ (h >>> 31);
+    }
+
+    private void checkForCycle() {
+        long hash = positionHash();
+        sinceSaved++;
+        if (hash == savedHash) {
+            cycleLength = sinceSaved;
+        } else if (sinceSaved == power) {
+            savedHash = hash;
+            power <<= 1;
+            sinceSaved = 0;
+        }
+    }
+
+    /**
+     * Get the number of wars in the last round played: 0 if the first cards
+     * decided it, 1 for a single war, 2 if that war was tied too, and so on
+     * @return the depth of the last round's chain of wars
+     */
+    public int getWarDepth() {
+        return warDepth;
+    }
+
+    /**
+     * Get the number of cards in the pot at the end of the last round
+     * @return the size of the last round's pot
+     */
+    public int getPotSize() {
+        return pot.size();
+    }
+
+    /**
+     * Get the longest chain of wars in any round since the deal
+     * @return the deepest war depth
+     */
+    public int getMaxWarDepth() {
+        return maxWarDepth;
+    }
+
+    /**
+     * Get the biggest pot won or lost in a war since the deal
+     * @return the most cards in a war's pot, or 0 if there has been no war
+     */
+    public int getMaxPotSize() {
+        return maxPotSize;
+    }
+
+    /**
+     * Get the number of rounds it takes a drawn game to come back to the same
+     * position
+     * @return the length of the cycle, or 0 if the game is not drawn
+     */
+    public int getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Get the cards a player holds
+     * @param who PLAYER or CPU
+     * @return the player's card ids, top of the deck first
+     */
+    public int[] getCards(int who) {
+        return ((who == PLAYER) ? playerDeck : cpuDeck).toArray();
+    }
+
+    /**
+     * Look at one of the cards a player holds, without copying their deck
+     * @param who PLAYER or CPU
+     * @param index the position of the card, 0 being the top of the deck
+     * @return the id of the card
+     */
+    public int getCard(int who, int index) {
+        return ((who == PLAYER) ? playerDeck : cpuDeck).get(index);
+    }
+
+    /**
+     * Get the number of cards a player holds
+     * @param who PLAYER or CPU
+     * @return the number of cards in the player's deck
+     */
+    public int getCardCount(int who) {
+        return (who == PLAYER) ? playerDeck.size() : cpuDeck.size();
+    }
+
+    /**
+     * Get the number of rounds played since the deal
+     * @return the number of rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Get the number of wars fought since the deal, counting each tie in a
+     * chain of wars separately
+     * @return the number of wars
+     */
+    public int getWars() {
+        return wars;
+    }
+}
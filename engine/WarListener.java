@@ -0,0 +1,54 @@
+package engine;
+
+/**
+ * Receives the events of a game of War as the engine plays it. A view can use
+ * these to animate the cards; headless runs simply don't register a listener.
+ * Every method does nothing by default so a listener only needs to override
+ * the events it cares about.
+ */
+public interface WarListener {
+    /**
+     * Both players turned over the top card of their deck to start a round
+     * @param playerCard the card played by the player
+     * @param cpuCard the card played by the computer
+     */
+    default void cardsPlayed(int playerCard, int cpuCard) {
+    }
+
+    /**
+     * The cards in play tied, so a war has begun
+     */
+    default void warStarted() {
+    }
+
+    /**
+     * One player placed (or kept back) a face-down card during a war
+     * @param who WarEngine.PLAYER or WarEngine.CPU
+     * @param card the card placed, or WarEngine.NO_CARD if the player had to
+     * keep their last card
+     */
+    default void faceDown(int who, int card) {
+    }
+
+    /**
+     * Both players turned over a card to decide a war
+     * @param playerCard the card played by the player
+     * @param cpuCard the card played by the computer
+     */
+    default void warCardsPlayed(int playerCard, int cpuCard) {
+    }
+
+    /**
+     * A player won the cards in the pot
+     * @param who WarEngine.PLAYER or WarEngine.CPU
+     */
+    default void potWon(int who) {
+    }
+
+    /**
+     * A war could not be finished because a player ran out of cards, so the
+     * cards in the pot are out of the game
+     */
+    default void potDiscarded() {
+    }
+}
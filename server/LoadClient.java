@@ -0,0 +1,145 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens a large number of sessions on a WarServer at once and plays games on
+ * all of them, to see how many tables the server can keep going. Like the
+ * server, each session runs on its own virtual thread when the JVM has them.
+ */
+public class LoadClient {
+    private static final byte[] PLAY = "PLAY\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEAL = "DEAL\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUIT = "QUIT\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final int gamesPerSession;
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger peakConnected = new AtomicInteger();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+
+    /**
+     * Create a load client
+     * @param host the server's host
+     * @param port the server's port
+     * @param sessions the number of sessions to open at once
+     * @param gamesPerSession the number of games to play on each session
+     */
+    public LoadClient(String host, int port, int sessions, int gamesPerSession) {
+        this.host = host;
+        this.port = port;
+        this.sessions = sessions;
+        this.gamesPerSession = gamesPerSession;
+    }
+
+    /**
+     * Open every session, play their games and wait for them all to finish
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(sessions);
+        ExecutorService executor = Threads.newPerTaskExecutor();
+        for (int i = 0; i < sessions; i++) {
+            executor.execute(() -> {
+                try {
+                    playSession();
+                } catch (IOException e) {
+                    failed.increment();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        executor.shutdown();
+    }
+
+    private void playSession() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            peakConnected.accumulateAndGet(connected.incrementAndGet(), Math::max);
+            try {
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+
+                // The server deals the first game as soon as it says hello
+                readUntil(in, "DEALT");
+                for (int game = 0; game < gamesPerSession; game++) {
+                    if (game > 0) {
+                        out.write(DEAL);
+                        readUntil(in, "DEALT");
+                    }
+                    out.write(PLAY);
+                    readUntil(in, "OVER");
+                    games.increment();
+                }
+                out.write(QUIT);
+            } finally {
+                connected.decrementAndGet();
+            }
+        }
+    }
+
+    private void readUntil(BufferedReader in, String prefix) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                throw new IOException("The server closed the session");
+            }
+            lines.increment();
+        } while (!line.startsWith(prefix));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d sessions connected (peak %,d, %,d failed), %,d games, %,d messages",
+            connected.get(), peakConnected.get(), failed.sum(), games.sum(), lines.sum());
+    }
+
+    /**
+     * Run a load test from the command line
+     * @param args the number of sessions (default 10,000), the number of
+     * games per session (default 1), the port (default 7878) and the host
+     * (default localhost)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int gamesPerSession = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        int port = (args.length > 2) ? Integer.parseInt(args[2]) : 7878;
+        String host = (args.length > 3) ? args[3] : "localhost";
+
+        LoadClient client = new LoadClient(host, port, sessions, gamesPerSession);
+        Thread status = new Thread(() -> {
+            while (true) {
+                Threads.pause(5000);
+                System.out.println(client);
+            }
+        });
+        status.setDaemon(true);
+        status.start();
+
+        long start = System.nanoTime();
+        client.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(client);
+        System.out.printf("Time: %.1f s (%,.0f messages/s) on %s threads%n", seconds,
+            client.lines.sum() / seconds, Threads.isVirtual() ? "virtual" : "platform");
+    }
+}
@@ -0,0 +1,75 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread helpers shared by the server and the load client. The same sources
+ * build for Java 17, so virtual threads are looked up when the program
+ * starts: on Java 21 or later every task gets its own virtual thread, and on
+ * older JVMs it falls back to a platform thread per task, which limits the
+ * server to around 1,400 sessions. WarServer says so when it starts.
+ *
+ * <p>Java 19 and 20 have the method that makes a virtual thread executor, but
+ * it throws unless preview features are enabled, so the lookup makes one
+ * executor to be sure it works before reporting virtual threads.
+ */
+final class Threads {
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+    private Threads() {
+    }
+
+    // The factory for virtual thread executors, or null if the JVM can't
+    // make them
+    private static Method findVirtualExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create an executor that starts a new thread for each task
+     * @return an executor of virtual threads if the JVM has them
+     */
+    static ExecutorService newPerTaskExecutor() {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create virtual threads", e);
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Determine if newPerTaskExecutor runs tasks on virtual threads
+     */
+    static boolean isVirtual() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Wait for a while without holding on to a carrier thread: a parked
+     * virtual thread is unmounted until the time is up
+     * @param millis the number of milliseconds to wait
+     */
+    static void pause(long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
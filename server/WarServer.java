@@ -0,0 +1,148 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts any number of War tables in one JVM. Each client that connects gets
+ * a session with its own engine and its own thread: a virtual thread when
+ * the JVM has them, so ten thousand tables waiting on their pacing cost ten
+ * thousand small heap objects rather than ten thousand OS threads.
+ *
+ * <p>The default build targets Java 17, which has no virtual threads. The
+ * server still runs there, but with a platform thread per session, and it
+ * tops out at around 1,400 sessions. Build it with the jdk21 profile and run
+ * it on Java 21 or later to serve thousands of tables; LoadClient opens ten
+ * thousand sessions by default to check.
+ *
+ * <p>The protocol is one line of text per message. The client sends:
+ * <pre>
+ *   DEAL      start a new game
+ *   ROUND     play one round
+ *   PLAY      play the rest of the game
+ *   QUIT      end the session
+ * </pre>
+ * and the server answers with the events of the game as they happen:
+ * <pre>
+ *   HELLO session            when the client connects, followed by a deal
+ *   DEALT playerCards cpuCards
+ *   CARDS playerCard cpuCard the first cards of a round
+ *   WAR                      the cards tied
+ *   DOWN who card            a face-down card, card -1 if none
+ *   UP playerCard cpuCard    the face-up cards of a war
+ *   WON who                  who took the pot
+ *   LOST                     nobody took the pot
+ *   ROUND winner playerCards cpuCards
+ *   OVER winner rounds       the game is over
+ *   ERROR message
+ * </pre>
+ * Players are numbered as in WarEngine: 0 the player, 1 the computer, 2 a
+ * drawn game and -1 nobody.
+ */
+public class WarServer {
+    private final int port;
+    private final long seed;
+    private final int pacing;
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger peakSessions = new AtomicInteger();
+    private final LongAdder totalSessions = new LongAdder();
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder games = new LongAdder();
+
+    /**
+     * Create a server
+     * @param port the port to listen on
+     * @param seed the seed that the deals are made from
+     * @param pacing the number of milliseconds between the events of a round
+     */
+    public WarServer(int port, long seed, int pacing) {
+        this.port = port;
+        this.seed = seed;
+        this.pacing = pacing;
+    }
+
+    /**
+     * Accept clients until the thread is interrupted or the socket fails
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException {
+        long nextId = 0;
+        ExecutorService executor = Threads.newPerTaskExecutor();
+        try (ServerSocket listener = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress())) {
+            while (!Thread.currentThread().isInterrupted()) {
+                Socket socket = listener.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(new WarSession(socket, this, seed, nextId++, pacing));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    void sessionStarted() {
+        totalSessions.increment();
+        peakSessions.accumulateAndGet(sessions.incrementAndGet(), Math::max);
+    }
+
+    void sessionEnded() {
+        sessions.decrementAndGet();
+    }
+
+    void roundPlayed() {
+        rounds.increment();
+    }
+
+    void gamePlayed() {
+        games.increment();
+    }
+
+    /**
+     * Get the number of sessions open right now
+     */
+    public int getSessions() {
+        return sessions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d sessions open (peak %,d, %,d in all), %,d games, %,d rounds",
+            sessions.get(), peakSessions.get(), totalSessions.sum(), games.sum(), rounds.sum());
+    }
+
+    /**
+     * Run a server from the command line, printing how busy it is every few
+     * seconds. It needs a Java 21 or later runtime to scale past about
+     * 1,400 sessions.
+     * @param args the port (default 7878), the pacing in milliseconds
+     * (default 200) and the seed (default random)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7878;
+        int pacing = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+
+        WarServer server = new WarServer(port, seed, pacing);
+        Thread status = new Thread(() -> {
+            while (true) {
+                Threads.pause(5000);
+                System.out.println(server);
+            }
+        });
+        status.setDaemon(true);
+        status.start();
+
+        System.out.printf("Serving War on port %d with %s threads%n", port,
+            Threads.isVirtual() ? "virtual" : "platform");
+        if (!Threads.isVirtual()) {
+            System.out.println("This JVM has no virtual threads, so the server will top out at"
+                + " around 1,400 sessions; run it on Java 21 or later to scale");
+        }
+        server.run();
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import engine.WarEngine;
+import engine.WarListener;
+
+/**
+ * One client's table: a WarEngine of its own, driven by the commands the
+ * client sends and reporting every event of the game back as a line of text.
+ * The events are paced like the Game window's animation, but by parking the
+ * session's thread, so a waiting table costs no carrier thread.
+ */
+class WarSession implements Runnable, WarListener {
+    private final Socket socket;
+    private final WarServer server;
+    private final long seed;
+    private final long id;
+    private final int pacing;
+    private final WarEngine engine = new WarEngine();
+
+    private Writer out;
+
+    /**
+     * Create a session for a client that has just connected
+     * @param socket the client's connection
+     * @param server the server to report to
+     * @param seed the seed that the server deals from
+     * @param id the number of the session, which picks its deals
+     * @param pacing the number of milliseconds between events
+     */
+    WarSession(Socket socket, WarServer server, long seed, long id, int pacing) {
+        this.socket = socket;
+        this.server = server;
+        this.seed = seed;
+        this.id = id;
+        this.pacing = pacing;
+        engine.setListener(this);
+    }
+
+    @Override
+    public void run() {
+        server.sessionStarted();
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            out = new BufferedWriter(
+                new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII));
+            send("HELLO " + id);
+
+            // Each session plays its own sequence of deals from the run's seed
+            long games = 0;
+            deal(games++);
+
+            String command;
+            while ((command = in.readLine()) != null) {
+                switch (command.trim().toUpperCase()) {
+                    case "DEAL":
+                        deal(games++);
+                        break;
+                    case "ROUND":
+                        playRound();
+                        break;
+                    case "PLAY":
+                        while (!engine.isOver()) {
+                            playRound();
+                        }
+                        break;
+                    case "QUIT":
+                        return;
+                    default:
+                        send("ERROR unknown command " + command);
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // The client has gone; nothing more to do
+        } finally {
+            server.sessionEnded();
+        }
+    }
+
+    private void deal(long game) throws IOException {
+        engine.deal(seed, (id << 20) + game);
+        send("DEALT " + engine.getCardCount(WarEngine.PLAYER) + " "
+            + engine.getCardCount(WarEngine.CPU));
+    }
+
+    private void playRound() throws IOException {
+        if (engine.isOver()) {
+            send("ERROR game over");
+            return;
+        }
+        int winner = engine.playRound();
+        server.roundPlayed();
+        send("ROUND " + winner + " " + engine.getCardCount(WarEngine.PLAYER) + " "
+            + engine.getCardCount(WarEngine.CPU));
+        if (engine.isOver()) {
+            server.gamePlayed();
+            send("OVER " + engine.getWinner() + " " + engine.getRounds());
+        }
+    }
+
+    public void cardsPlayed(int playerCard, int cpuCard) {
+        event("CARDS " + playerCard + " " + cpuCard, pacing);
+    }
+
+    public void warStarted() {
+        event("WAR", pacing);
+    }
+
+    public void faceDown(int who, int card) {
+        event("DOWN " + who + " " + card, pacing / 4);
+    }
+
+    public void warCardsPlayed(int playerCard, int cpuCard) {
+        event("UP " + playerCard + " " + cpuCard, pacing);
+    }
+
+    public void potWon(int who) {
+        event("WON " + who, 0);
+    }
+
+    public void potDiscarded() {
+        event("LOST", 0);
+    }
+
+    // The listener can't throw, so a failed write closes the socket, and the
+    // session ends at its next write
+    private void event(String text, int millis) {
+        try {
+            send(text);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+        if (millis > 0 && !socket.isClosed()) {
+            Threads.pause(millis);
+        }
+    }
+
+    private void send(String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,347 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import engine.GameRandom;
+import engine.WarEngine;
+
+/**
+ * Searches for deals that play out to extremes: the longest game that still
+ * ends, the longest cycle, or the most wars. A deal is an order of the 52
+ * cards, with ids in the same order as Card.loadCards() creates them, and
+ * the search evolves orders with a genetic algorithm.
+ *
+ * The population is split into islands, one per core. Each island breeds
+ * its own generations on its own thread, playing every new deal on its own
+ * engine, so islands share nothing while they run. Every few generations
+ * the islands stop and each one sends copies of its best deals to the next
+ * island in a ring, where they replace the worst. Parents are picked by
+ * tournament, children are bred by order crossover, which keeps a run of one
+ * parent's cards in place and fills in the rest in the other parent's order,
+ * and mutated by swapping cards. Each island draws from its own GameRandom,
+ * so a search with the same seed and number of islands always finds the
+ * same deals.
+ */
+public class DealSearch {
+    /** What the search is looking for */
+    public enum Objective {
+        /** The most rounds in a game that someone wins */
+        LONGEST,
+        /** A game that repeats forever, with the longest cycle */
+        CYCLE,
+        /** The most wars in a game */
+        WARS
+    }
+
+    private static final int POPULATION = 64;
+    private static final int ELITE = 2;
+    private static final int TOURNAMENT = 3;
+    private static final int MIGRATION_INTERVAL = 20;
+    private static final int MIGRANTS = 2;
+    // Drawn games always beat games that end when looking for cycles
+    private static final long CYCLE_BONUS = 1_000_000;
+
+    private final Objective objective;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final int[] values = WarEngine.standardValues();
+    private final Island[] islands;
+    private int generation;
+
+    /**
+     * Create a search with one island for each worker of a pool
+     * @param objective what to look for
+     * @param seed the seed of the search
+     * @param pool the pool to run the islands on
+     */
+    public DealSearch(Objective objective, long seed, ForkJoinPool pool) {
+        this.objective = objective;
+        this.seed = seed;
+        this.pool = pool;
+        this.islands = new Island[pool.getParallelism()];
+        for (int i = 0; i < islands.length; i++) {
+            islands[i] = new Island(i);
+        }
+    }
+
+    // One population, bred on one thread at a time
+    private class Island {
+        final WarEngine engine = new WarEngine(values);
+        final GameRandom random;
+        int[][] deals = new int[POPULATION][];
+        long[] fitness = new long[POPULATION];
+        int[][] next = new int[POPULATION][];
+        // Scratch space for crossover
+        final boolean[] taken = new boolean[values.length];
+
+        Island(int index) {
+            random = new GameRandom(seed, index);
+            for (int i = 0; i < POPULATION; i++) {
+                int[] deal = new int[values.length];
+                for (int c = 0; c < deal.length; c++) {
+                    deal[c] = c;
+                }
+                WarEngine.shuffle(deal, random);
+                deals[i] = deal;
+                next[i] = new int[values.length];
+            }
+            evaluate(0);
+        }
+
+        // Play the new deals of a generation in one pass on this island's
+        // engine
+        void evaluate(int from) {
+            for (int i = from; i < POPULATION; i++) {
+                engine.deal(deals[i]);
+                fitness[i] = score(engine, engine.playGame());
+            }
+        }
+
+        void breed(int generations) {
+            for (int g = 0; g < generations; g++) {
+                sort();
+
+                // The best deals go through unchanged
+                for (int i = 0; i < ELITE; i++) {
+                    System.arraycopy(deals[i], 0, next[i], 0, values.length);
+                }
+                for (int i = ELITE; i < POPULATION; i++) {
+                    int[] mother = deals[pick()];
+                    int[] father = deals[pick()];
+                    crossover(mother, father, next[i]);
+                    mutate(next[i]);
+                }
+
+                int[][] parents = deals;
+                deals = next;
+                next = parents;
+                evaluate(ELITE);
+            }
+            sort();
+        }
+
+        // The best of a few deals picked at random
+        int pick() {
+            int best = random.nextInt(POPULATION);
+            for (int i = 1; i < TOURNAMENT; i++) {
+                int other = random.nextInt(POPULATION);
+                if (fitness[other] > fitness[best]) {
+                    best = other;
+                }
+            }
+            return best;
+        }
+
+        // Order crossover: the child keeps a run of the mother's cards where
+        // they are and takes the rest in the order the father holds them
+        void crossover(int[] mother, int[] father, int[] child) {
+            int n = mother.length;
+            int start = random.nextInt(n);
+            int end = start + random.nextInt(n - start) + 1;
+            Arrays.fill(taken, false);
+            for (int i = start; i < end; i++) {
+                child[i] = mother[i];
+                taken[mother[i]] = true;
+            }
+            int from = end % n;
+            for (int i = end % n; i != start; i = (i + 1) % n) {
+                while (taken[father[from]]) {
+                    from = (from + 1) % n;
+                }
+                child[i] = father[from];
+                taken[father[from]] = true;
+            }
+        }
+
+        // Swap a card or two
+        void mutate(int[] deal) {
+            int swaps = 1 + random.nextInt(2);
+            for (int s = 0; s < swaps; s++) {
+                int i = random.nextInt(deal.length);
+                int j = random.nextInt(deal.length);
+                int temp = deal[i];
+                deal[i] = deal[j];
+                deal[j] = temp;
+            }
+        }
+
+        // Put the best deals first
+        void sort() {
+            Integer[] order = new Integer[POPULATION];
+            for (int i = 0; i < POPULATION; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(fitness[b], fitness[a]));
+            int[][] sortedDeals = new int[POPULATION][];
+            long[] sortedFitness = new long[POPULATION];
+            for (int i = 0; i < POPULATION; i++) {
+                sortedDeals[i] = deals[order[i]];
+                sortedFitness[i] = fitness[order[i]];
+            }
+            deals = sortedDeals;
+            fitness = sortedFitness;
+        }
+    }
+
+    // How good a game that has just been played is
+    private long score(WarEngine engine, int winner) {
+        switch (objective) {
+            case LONGEST:
+                return (winner == WarEngine.DRAW) ? 0 : engine.getRounds();
+            case CYCLE:
+                return (winner == WarEngine.DRAW) ? CYCLE_BONUS + engine.getCycleLength()
+                    : engine.getRounds();
+            default:
+                return engine.getWars();
+        }
+    }
+
+    /**
+     * Run the islands for some generations, migrating between them as they go
+     * @param generations the number of generations to breed
+     */
+    public void run(int generations) {
+        int done = 0;
+        while (done < generations) {
+            int epoch = Math.min(MIGRATION_INTERVAL, generations - done);
+            // join() rethrows anything an island threw, rather than carrying on
+            // with a population that stopped part way
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Island island : islands) {
+                tasks.add(pool.submit(() -> island.breed(epoch)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            migrate();
+            done += epoch;
+            generation += epoch;
+        }
+    }
+
+    // Each island's best deals replace the worst of the next island
+    private void migrate() {
+        if (islands.length < 2) {
+            return;
+        }
+        int[][][] migrants = new int[islands.length][MIGRANTS][];
+        long[][] scores = new long[islands.length][MIGRANTS];
+        for (int i = 0; i < islands.length; i++) {
+            for (int m = 0; m < MIGRANTS; m++) {
+                migrants[i][m] = islands[i].deals[m].clone();
+                scores[i][m] = islands[i].fitness[m];
+            }
+        }
+        for (int i = 0; i < islands.length; i++) {
+            Island to = islands[(i + 1) % islands.length];
+            for (int m = 0; m < MIGRANTS; m++) {
+                to.deals[POPULATION - 1 - m] = migrants[i][m];
+                to.fitness[POPULATION - 1 - m] = scores[i][m];
+            }
+            to.sort();
+        }
+    }
+
+    /**
+     * Get the best deal found so far
+     * @return the card ids, top of the deck first
+     */
+    public int[] getBest() {
+        Island best = islands[0];
+        for (Island island : islands) {
+            if (island.fitness[0] > best.fitness[0]) {
+                best = island;
+            }
+        }
+        return best.deals[0].clone();
+    }
+
+    /**
+     * Get the number of generations bred so far
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Name a card by its id, in the order Card.loadCards() creates them
+     * @param card the card id
+     * @return the card's rank and suit, e.g. "QH"
+     */
+    public static String cardName(int card) {
+        return "A23456789TJQK".charAt(card % 13) + "" + "HDCS".charAt(card / 13);
+    }
+
+    /**
+     * Write a deal to war.sav, as a game that hasn't started, so it can be
+     * played with the L key in Game
+     * @param deal the card ids, top of the deck first
+     * @throws IOException if the file can't be written
+     */
+    public static void save(int[] deal) throws IOException {
+        WarEngine engine = new WarEngine();
+        engine.deal(deal);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        // Not over, and the first face-down card goes where Game puts it
+        buffer.put((byte) 0);
+        buffer.putShort((short) 390);
+        engine.save(buffer);
+        Files.write(Path.of("war.sav"), Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    /**
+     * Run a search from the command line
+     * @param args the objective (longest, cycle or wars; default longest), the
+     * number of generations (default 1,000), the seed (default random) and
+     * "save" to write the best deal to war.sav
+     */
+    public static void main(String[] args) throws IOException {
+        Objective objective = (args.length > 0) ? Objective.valueOf(args[0].toUpperCase())
+            : Objective.LONGEST;
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+        boolean save = args.length > 3 && args[3].equals("save");
+
+        DealSearch search = new DealSearch(objective, seed, ForkJoinPool.commonPool());
+        System.out.printf("Searching for %s with %d islands of %d (seed %d)%n",
+            objective.name().toLowerCase(), search.islands.length, POPULATION, seed);
+        long start = System.nanoTime();
+        while (search.getGeneration() < generations) {
+            search.run(Math.min(100, generations - search.getGeneration()));
+            System.out.printf("Generation %,6d: %s%n", search.getGeneration(), describe(search.getBest()));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long games = (long) search.getGeneration() * (POPULATION - ELITE) * search.islands.length;
+        System.out.printf("%,d games in %.1f s (%,.0f games/s)%n", games, seconds, games / seconds);
+
+        int[] best = search.getBest();
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < best.length; i++) {
+            names.append((i == best.length / 2) ? " | " : (i > 0) ? " " : "");
+            names.append(cardName(best[i]));
+        }
+        System.out.println("Best deal (player | computer, top first): " + names);
+        if (save) {
+            save(best);
+            System.out.println("Saved to war.sav; press L in the game to play it");
+        }
+    }
+
+    // How a deal plays out
+    private static String describe(int[] deal) {
+        WarEngine engine = new WarEngine();
+        engine.deal(deal);
+        int winner = engine.playGame();
+        String result = (winner == WarEngine.DRAW) ? "drawn, cycle of " + engine.getCycleLength()
+            : ((winner == WarEngine.PLAYER) ? "player" : "computer") + " wins";
+        return String.format("%,d rounds, %,d wars, %s", engine.getRounds(), engine.getWars(), result);
+    }
+}
@@ -0,0 +1,343 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import engine.WarEngine;
+
+/**
+ * Everything needed to replay one game: the seed and index it was dealt from,
+ * the deal itself, and how each round turned out. A record is reused from
+ * game to game so that recording allocates nothing once its buffers have
+ * grown to fit.
+ *
+ * <p>The binary form, with every number an unsigned LEB128 varint unless
+ * noted, is:
+ * <pre>
+ *   length of the rest of the record
+ *   game index
+ *   seed (8 bytes, little-endian)
+ *   number of cards, number of cards dealt to the player
+ *   the deal: one byte per card id, the player's cards first
+ *   number of rounds
+ *   rounds, 4 to a byte, 2 bits each, low bits first:
+ *       0 = the player won, 1 = the computer won, 2 = decided by a war
+ *   for each war round, (war depth - 1) &lt;&lt; 2 | outcome, where outcome
+ *       is 0 = the player won, 1 = the computer won, 2 = nobody (the pot was
+ *       lost when a player ran out)
+ *   result: one byte, 0 = player, 1 = computer, 2 = drawn by cycle,
+ *       3 = not finished
+ *   cycle length (0 unless drawn)
+ * </pre>
+ * Most rounds are not wars, so a typical game of a few hundred rounds takes
+ * a couple of hundred bytes.
+ */
+public class GameRecord {
+    private static final int PLAYER_WON = 0;
+    private static final int CPU_WON = 1;
+    private static final int WAR = 2;
+    private static final int NOBODY_WON = 2;
+
+    private long seed;
+    private long gameIndex;
+    private int[] deal = new int[0];
+    private int cards;
+    private int playerCards;
+
+    private int rounds;
+    private byte[] winners = new byte[1024];
+    private byte[] warDepths = new byte[1024];
+
+    private int result;
+    private int cycleLength;
+
+    private byte[] encoded = new byte[1024];
+    private int encodedLength;
+
+    /**
+     * Start recording a game that has just been dealt
+     * @param seed the seed of the run
+     * @param gameIndex the index of the game within the run
+     * @param engine the engine the game was dealt on
+     */
+    public void start(long seed, long gameIndex, WarEngine engine) {
+        this.seed = seed;
+        this.gameIndex = gameIndex;
+
+        playerCards = engine.getCardCount(WarEngine.PLAYER);
+        cards = playerCards + engine.getCardCount(WarEngine.CPU);
+        if (deal.length < cards) {
+            deal = new int[cards];
+        }
+        for (int i = 0; i < playerCards; i++) {
+            deal[i] = engine.getCard(WarEngine.PLAYER, i);
+        }
+        for (int i = playerCards; i < cards; i++) {
+            deal[i] = engine.getCard(WarEngine.CPU, i - playerCards);
+        }
+
+        rounds = 0;
+        result = WarEngine.NONE;
+        cycleLength = 0;
+    }
+
+    /**
+     * Record the round that the engine has just played
+     * @param winner the winner of the round, as returned by playRound
+     * @param warDepth the number of wars in the round
+     */
+    public void addRound(int winner, int warDepth) {
+        if (rounds == winners.length) {
+            winners = Arrays.copyOf(winners, rounds * 2);
+            warDepths = Arrays.copyOf(warDepths, rounds * 2);
+        }
+        winners[rounds] = (byte) winner;
+        warDepths[rounds] = (byte) Math.min(warDepth, 127);
+        rounds++;
+    }
+
+    /**
+     * Record how the game ended
+     * @param engine the engine the game was played on
+     */
+    public void finish(WarEngine engine) {
+        result = engine.getWinner();
+        cycleLength = engine.getCycleLength();
+    }
+
+    /**
+     * Deal the recorded game onto an engine, ready to play the first round
+     * @param engine an engine for the same deck that the game was played with
+     */
+    public void deal(WarEngine engine) {
+        // A game resumed from a saved state need not start evenly split
+        engine.deal(deal, playerCards, Arrays.copyOfRange(deal, playerCards, cards),
+            cards - playerCards);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getGameIndex() {
+        return gameIndex;
+    }
+
+    /**
+     * Get the number of rounds recorded
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Get the winner of a round
+     * @param round the round, counting from 0
+     * @return WarEngine.PLAYER, WarEngine.CPU or WarEngine.NONE
+     */
+    public int getRoundWinner(int round) {
+        return winners[round];
+    }
+
+    /**
+     * Get the number of wars it took to decide a round
+     * @param round the round, counting from 0
+     */
+    public int getWarDepth(int round) {
+        return warDepths[round];
+    }
+
+    /**
+     * Get the result of the game
+     * @return WarEngine.PLAYER, WarEngine.CPU, WarEngine.DRAW, or
+     * WarEngine.NONE if the game was not finished
+     */
+    public int getResult() {
+        return result;
+    }
+
+    public int getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Encode the record into its binary form. The returned array is reused by
+     * the next call.
+     * @return an array holding the record in its first getEncodedLength() bytes
+     */
+    public byte[] encode() {
+        // Leave room for the length, which is only known at the end. At
+        // worst the index, seed, counts, result and cycle length take 39
+        // bytes, the round symbols take a byte for every four rounds or part
+        // of four, and each war takes a varint of up to two bytes.
+        int pos = 5;
+        ensureEncoded(pos + 39 + cards + (rounds + 3) / 4 + rounds * 2);
+
+        pos = putVarint(encoded, pos, gameIndex);
+        for (int i = 0; i < 8; i++) {
+            encoded[pos++] = (byte) (seed >>> (8 * i));
+        }
+        pos = putVarint(encoded, pos, cards);
+        pos = putVarint(encoded, pos, playerCards);
+        for (int i = 0; i < cards; i++) {
+            encoded[pos++] = (byte) deal[i];
+        }
+
+        pos = putVarint(encoded, pos, rounds);
+        int symbols = pos;
+        Arrays.fill(encoded, symbols, symbols + (rounds + 3) / 4, (byte) 0);
+        pos += (rounds + 3) / 4;
+        for (int i = 0; i < rounds; i++) {
+            int symbol;
+            if (warDepths[i] > 0) {
+                symbol = WAR;
+                pos = putVarint(encoded, pos, (warDepths[i] - 1) << 2 | outcomeOf(winners[i]));
+            } else {
+                symbol = outcomeOf(winners[i]);
+            }
+            encoded[symbols + i / 4] |= (byte) (symbol << (2 * (i % 4)));
+        }
+
+        encoded[pos++] = (byte) resultCodeOf(result);
+        pos = putVarint(encoded, pos, cycleLength);
+
+        // Now the length is known, move the record up against it
+        int bodyLength = pos - 5;
+        int lengthSize = varintSize(bodyLength);
+        System.arraycopy(encoded, 5, encoded, lengthSize, bodyLength);
+        putVarint(encoded, 0, bodyLength);
+        encodedLength = lengthSize + bodyLength;
+        return encoded;
+    }
+
+    /**
+     * Get the number of bytes written by the last call to encode
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * Read a record from its binary form, replacing this record's contents
+     * @param buffer a buffer positioned at the start of a record; it is left
+     * positioned at the start of the next one
+     */
+    public void decode(ByteBuffer buffer) {
+        int bodyLength = (int) getVarint(buffer);
+        int end = buffer.position() + bodyLength;
+
+        gameIndex = getVarint(buffer);
+        seed = 0;
+        for (int i = 0; i < 8; i++) {
+            seed |= (buffer.get() & 0xFFL) << (8 * i);
+        }
+        cards = (int) getVarint(buffer);
+        playerCards = (int) getVarint(buffer);
+        if (deal.length < cards) {
+            deal = new int[cards];
+        }
+        for (int i = 0; i < cards; i++) {
+            deal[i] = buffer.get() & 0xFF;
+        }
+
+        rounds = (int) getVarint(buffer);
+        if (winners.length < rounds) {
+            winners = new byte[rounds];
+            warDepths = new byte[rounds];
+        }
+        int symbols = buffer.position();
+        buffer.position(symbols + (rounds + 3) / 4);
+        for (int i = 0; i < rounds; i++) {
+            int symbol = (buffer.get(symbols + i / 4) >> (2 * (i % 4))) & 3;
+            if (symbol == WAR) {
+                int code = (int) getVarint(buffer);
+                warDepths[i] = (byte) ((code >> 2) + 1);
+                winners[i] = (byte) winnerOf(code & 3);
+            } else {
+                warDepths[i] = 0;
+                winners[i] = (byte) winnerOf(symbol);
+            }
+        }
+
+        result = resultOf(buffer.get());
+        cycleLength = (int) getVarint(buffer);
+        buffer.position(end);
+    }
+
+    private static int outcomeOf(int winner) {
+        if (winner == WarEngine.PLAYER) {
+            return PLAYER_WON;
+        } else if (winner == WarEngine.CPU) {
+            return CPU_WON;
+        }
+        return NOBODY_WON;
+    }
+
+    private static int winnerOf(int outcome) {
+        if (outcome == PLAYER_WON) {
+            return WarEngine.PLAYER;
+        } else if (outcome == CPU_WON) {
+            return WarEngine.CPU;
+        }
+        return WarEngine.NONE;
+    }
+
+    private static int resultCodeOf(int result) {
+        switch (result) {
+            case WarEngine.PLAYER: return 0;
+            case WarEngine.CPU: return 1;
+            case WarEngine.DRAW: return 2;
+            default: return 3;
+        }
+    }
+
+    private static int resultOf(int code) {
+        switch (code) {
+            case 0: return WarEngine.PLAYER;
+            case 1: return WarEngine.CPU;
+            case 2: return WarEngine.DRAW;
+            default: return WarEngine.NONE;
+        }
+    }
+
+    private void ensureEncoded(int size) {
+        if (encoded.length < size) {
+            encoded = new byte[Math.max(size, encoded.length * 2)];
+        }
+    }
+
+    private static int putVarint(byte[] bytes, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint
+     * @param buffer the buffer to read from
+     * @return the value
+     */
+    static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,101 @@
+package sim;
+
+/**
+ * A histogram of non-negative longs with log-sized buckets, in the style of
+ * HdrHistogram. Values below 2^precision each get a bucket of their own;
+ * above that, every power of two is split into 2^(precision-1) equal buckets,
+ * so a value is always counted to within 1 part in 2^(precision-1).
+ *
+ * Recording is one array increment and takes no lock, so each thread should
+ * record into its own histogram and merge them when it is done.
+ */
+public class Histogram {
+    private final int precision;
+    private final long[] counts;
+    private long totalCount;
+    private long max;
+
+    /**
+     * Create an empty histogram
+     * @param precision the number of bits of each value to keep (2 to 16)
+     */
+    public Histogram(int precision) {
+        if (precision < 2 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 2 and 16");
+        }
+        this.precision = precision;
+        this.counts = new long[(65 - precision) << (precision - 1)];
+    }
+
+    /**
+     * Count one occurrence of a value
+     * @param value the value, which must not be negative
+     */
+    public void record(long value) {
+        counts[indexOf(value)]++;
+        totalCount++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Add the counts from another histogram with the same precision
+     * @param other the histogram to add
+     */
+    public void merge(Histogram other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Histograms have different precision");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the number of values recorded
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the largest value recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get the value that the given percentage of recorded values are at or
+     * below, to within the histogram's precision
+     * @param percentile the percentage, from 0 to 100
+     * @return the largest value that falls in the same bucket as that value,
+     * or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return 0;
+    }
+
+    private int indexOf(long value) {
+        // The power of two above the exact range that the value falls in
+        int shift = 63 - Long.numberOfLeadingZeros(value | ((1L << precision) - 1)) - (precision - 1);
+        return (shift << (precision - 1)) + (int) (value >>> shift);
+    }
+
+    private long highestValueAt(int index) {
+        int shift = Math.max(0, (index >> (precision - 1)) - 1);
+        long lowest = (long) (index - (shift << (precision - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,415 @@
+package sim;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import engine.GameRandom;
+import engine.WarEngine;
+
+/**
+ * Plays many games at once in lockstep, one game per SIMD lane, using the
+ * incubating Vector API. It is only built by the vector profile (mvn
+ * -Pvector), and run with --add-modules jdk.incubator.vector.
+ *
+ * The state of every game is kept in parallel arrays rather than one object
+ * per game. Each step, the top card of every deck is gathered into a vector,
+ * the player's and computer's cards are compared for all the games at once,
+ * and the cards of every game that was won are scattered onto the end of the
+ * winner's deck. Games that are over are masked out, and games whose cards tie fall
+ * out of lockstep and settle their war one at a time. When a game ends, the
+ * next game in the range is dealt into its lane. The rules and deals are the
+ * same as WarEngine's, so game i comes out exactly as it would on a
+ * WarEngine dealt from (seed, i).
+ *
+ * The lanes don't check for repeating games. A game still going after
+ * HANDOFF_ROUNDS rounds is handed over to a WarEngine to finish; almost all
+ * of those are the games that never end. Drawn games don't count towards the
+ * round totals, so it doesn't matter that the lanes notice a repeat later
+ * than a WarEngine would.
+ */
+public class LockstepEngine implements Tournament.BatchPlayer {
+    // Not SPECIES_PREFERRED: C2 on JDK 17 crashes compiling 512 bit scatters
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_256;
+    private static final int HANDOFF_ROUNDS = 4096;
+
+    // Each lane has two 64 card rings, the player's then the computer's,
+    // holding card values rather than ids, then two slots that take the
+    // cards of games that weren't won in a step
+    private static final int RING = 64;
+    private static final int RING_MASK = RING - 1;
+    private static final int SPARE = 2 * RING;
+    private static final int LANE_SIZE = 2 * RING + 2;
+
+    private final int lanes;
+    private final int[] cards;
+    private final int[] playerHead;
+    private final int[] playerTail;
+    private final int[] cpuHead;
+    private final int[] cpuTail;
+    private final int[] laneBase;
+    private final boolean[] active;
+    private final long[] gameIndex;
+
+    // Per game totals
+    private final int[] rounds;
+    private final int[] wars;
+    private final int[] maxWarDepth;
+    private final int[] maxPotSize;
+
+    // Scratch space for one step
+    private final int[] playerIndex;
+    private final int[] cpuIndex;
+    private final int[] playerTop;
+    private final int[] cpuTop;
+    private final int[] pot = new int[52];
+    private final long[] ended;
+
+    private final int[] values = WarEngine.standardValues();
+    private final int[] order = new int[52];
+    private final GameRandom random = new GameRandom(0, 0);
+    private final WarEngine finisher;
+    private final int[] handoffPlayer = new int[52];
+    private final int[] handoffCpu = new int[52];
+
+    private long seed;
+    private long nextGame;
+    private long endGame;
+
+    /**
+     * Create an engine with a few vectors' worth of lanes
+     */
+    public LockstepEngine() {
+        this(SPECIES.length() * 4);
+    }
+
+    /**
+     * Create an engine
+     * @param lanes the number of games to play at once; rounded up to a
+     * multiple of the vector length
+     */
+    public LockstepEngine(int lanes) {
+        this.lanes = SPECIES.loopBound(lanes + SPECIES.length() - 1);
+        cards = new int[this.lanes * LANE_SIZE];
+        playerHead = new int[this.lanes];
+        playerTail = new int[this.lanes];
+        cpuHead = new int[this.lanes];
+        cpuTail = new int[this.lanes];
+        laneBase = new int[this.lanes];
+        active = new boolean[this.lanes];
+        gameIndex = new long[this.lanes];
+        rounds = new int[this.lanes];
+        wars = new int[this.lanes];
+        maxWarDepth = new int[this.lanes];
+        maxPotSize = new int[this.lanes];
+        playerIndex = new int[this.lanes];
+        cpuIndex = new int[this.lanes];
+        playerTop = new int[this.lanes];
+        cpuTop = new int[this.lanes];
+        ended = new long[this.lanes / SPECIES.length()];
+        for (int lane = 0; lane < this.lanes; lane++) {
+            laneBase[lane] = lane * LANE_SIZE;
+        }
+
+        // Card ids are the card values on the engine that finishes long games
+        int[] identity = new int[52];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        finisher = new WarEngine(identity);
+    }
+
+    /**
+     * Get the number of games played at once
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    @Override
+    public void play(long seed, long first, long end, TournamentStats stats) {
+        this.seed = seed;
+        this.nextGame = first;
+        this.endGame = end;
+
+        int running = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (dealNext(lane)) {
+                running++;
+            }
+        }
+
+        while (running > 0) {
+            step();
+
+            for (int chunk = 0; chunk < ended.length; chunk++) {
+                for (long bits = ended[chunk]; bits != 0; bits &= bits - 1) {
+                    int lane = chunk * SPECIES.length() + Long.numberOfTrailingZeros(bits);
+                    if (retire(lane, stats)) {
+                        running--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a game that has ended or gone on too long and deal the next one
+     * @return true if there was no next game and the lane is now idle
+     */
+    private boolean retire(int lane, TournamentStats stats) {
+        int winner = winnerOf(lane);
+        if (winner == WarEngine.NONE) {
+            finish(lane, stats);
+        } else {
+            stats.record(winner, rounds[lane], wars[lane], maxWarDepth[lane],
+                maxPotSize[lane], 0);
+        }
+        return !dealNext(lane);
+    }
+
+    /**
+     * Play one round of every active game, and note which games have ended or
+     * gone on too long
+     */
+    private void step() {
+        for (int base = 0; base < lanes; base += SPECIES.length()) {
+            int chunk = base / SPECIES.length();
+            VectorMask<Integer> live = VectorMask.fromArray(SPECIES, active, base);
+            if (!live.anyTrue()) {
+                ended[chunk] = 0;
+                continue;
+            }
+
+            // Gather the top card of every deck
+            IntVector lane = IntVector.fromArray(SPECIES, laneBase, base);
+            IntVector pHead = IntVector.fromArray(SPECIES, playerHead, base);
+            IntVector cHead = IntVector.fromArray(SPECIES, cpuHead, base);
+            pHead.and(RING_MASK).add(lane).intoArray(playerIndex, base);
+            cHead.and(RING_MASK).add(lane).add(RING).intoArray(cpuIndex, base);
+            IntVector pTop = IntVector.fromArray(SPECIES, cards, 0, playerIndex, base, live);
+            IntVector cTop = IntVector.fromArray(SPECIES, cards, 0, cpuIndex, base, live);
+            pTop.intoArray(playerTop, base);
+            cTop.intoArray(cpuTop, base);
+
+            // Every live game draws a card from each deck
+            pHead.add(1, live).intoArray(playerHead, base);
+            cHead.add(1, live).intoArray(cpuHead, base);
+            IntVector played = IntVector.fromArray(SPECIES, rounds, base).add(1, live);
+            played.intoArray(rounds, base);
+
+            // Compare all the games at once
+            VectorMask<Integer> playerWon = pTop.compare(VectorOperators.GT, cTop, live);
+            VectorMask<Integer> cpuWon = pTop.compare(VectorOperators.LT, cTop, live);
+            long tied = pTop.compare(VectorOperators.EQ, cTop, live).toLong();
+
+            // Every game that was won scatters both cards onto the tail of
+            // the winner's ring. The lanes don't overlap, so neither do the
+            // scattered slots. Games that weren't won scatter into their
+            // spare slots instead, which is faster than a masked scatter.
+            VectorMask<Integer> decided = playerWon.or(cpuWon);
+            IntVector pTail = IntVector.fromArray(SPECIES, playerTail, base);
+            IntVector cTail = IntVector.fromArray(SPECIES, cpuTail, base);
+            IntVector tail = pTail.blend(cTail, cpuWon);
+            IntVector ring = lane.add(RING, cpuWon);
+            IntVector spare = lane.add(SPARE);
+            spare.blend(tail.and(RING_MASK).add(ring), decided).intoArray(playerIndex, base);
+            spare.add(1).blend(tail.add(1).and(RING_MASK).add(ring), decided)
+                .intoArray(cpuIndex, base);
+            pTop.intoArray(cards, 0, playerIndex, base);
+            cTop.intoArray(cards, 0, cpuIndex, base);
+            pTail.add(2, playerWon).intoArray(playerTail, base);
+            cTail.add(2, cpuWon).intoArray(cpuTail, base);
+
+            for (long bits = tied; bits != 0; bits &= bits - 1) {
+                int l = base + Long.numberOfTrailingZeros(bits);
+                war(l);
+            }
+
+            // A game ends when either deck is empty
+            IntVector playerCount = IntVector.fromArray(SPECIES, playerTail, base)
+                .sub(IntVector.fromArray(SPECIES, playerHead, base));
+            IntVector cpuCount = IntVector.fromArray(SPECIES, cpuTail, base)
+                .sub(IntVector.fromArray(SPECIES, cpuHead, base));
+            ended[chunk] = playerCount.min(cpuCount).compare(VectorOperators.EQ, 0)
+                .or(played.compare(VectorOperators.GE, HANDOFF_ROUNDS))
+                .and(live).toLong();
+        }
+    }
+
+    /**
+     * Settle a war in one lane, the same way WarEngine does
+     */
+    private void war(int lane) {
+        int p = playerTop[lane];
+        int c = cpuTop[lane];
+        int potSize = 0;
+        pot[potSize++] = p;
+        pot[potSize++] = c;
+
+        int depth = 0;
+        while (p == c) {
+            depth++;
+            wars[lane]++;
+
+            // Each player places 3 face-down cards, but always keeps one to play
+            for (int i = 0; i < 3; i++) {
+                if (playerTail[lane] - playerHead[lane] > 1) {
+                    pot[potSize++] = drawPlayer(lane);
+                }
+                if (cpuTail[lane] - cpuHead[lane] > 1) {
+                    pot[potSize++] = drawCpu(lane);
+                }
+            }
+
+            if (playerTail[lane] == playerHead[lane] || cpuTail[lane] == cpuHead[lane]) {
+                // The pot is lost
+                recordWar(lane, depth, potSize);
+                return;
+            }
+
+            p = drawPlayer(lane);
+            c = drawCpu(lane);
+            pot[potSize++] = p;
+            pot[potSize++] = c;
+        }
+        recordWar(lane, depth, potSize);
+
+        if (p > c) {
+            for (int i = 0; i < potSize; i++) {
+                addPlayer(lane, pot[i]);
+            }
+        } else {
+            for (int i = 0; i < potSize; i++) {
+                addCpu(lane, pot[i]);
+            }
+        }
+    }
+
+    private void recordWar(int lane, int depth, int potSize) {
+        maxWarDepth[lane] = Math.max(maxWarDepth[lane], depth);
+        maxPotSize[lane] = Math.max(maxPotSize[lane], potSize);
+    }
+
+    private int drawPlayer(int lane) {
+        return cards[laneBase[lane] + (playerHead[lane]++ & RING_MASK)];
+    }
+
+    private int drawCpu(int lane) {
+        return cards[laneBase[lane] + RING + (cpuHead[lane]++ & RING_MASK)];
+    }
+
+    private void addPlayer(int lane, int value) {
+        cards[laneBase[lane] + (playerTail[lane]++ & RING_MASK)] = value;
+    }
+
+    private void addCpu(int lane, int value) {
+        cards[laneBase[lane] + RING + (cpuTail[lane]++ & RING_MASK)] = value;
+    }
+
+    private int winnerOf(int lane) {
+        if (playerTail[lane] == playerHead[lane]) {
+            return WarEngine.CPU;
+        } else if (cpuTail[lane] == cpuHead[lane]) {
+            return WarEngine.PLAYER;
+        }
+        return WarEngine.NONE;
+    }
+
+    /**
+     * Deal the next game of the range into a lane
+     * @return false if there are no more games, leaving the lane idle
+     */
+    private boolean dealNext(int lane) {
+        if (nextGame >= endGame) {
+            active[lane] = false;
+            return false;
+        }
+        gameIndex[lane] = nextGame++;
+
+        // The same shuffle as WarEngine.deal(seed, index)
+        random.setGame(seed, gameIndex[lane]);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        WarEngine.shuffle(order, random);
+
+        playerHead[lane] = 0;
+        playerTail[lane] = 0;
+        cpuHead[lane] = 0;
+        cpuTail[lane] = 0;
+        for (int i = 0; i < 26; i++) {
+            addPlayer(lane, values[order[i]]);
+        }
+        for (int i = 26; i < 52; i++) {
+            addCpu(lane, values[order[i]]);
+        }
+
+        rounds[lane] = 0;
+        wars[lane] = 0;
+        maxWarDepth[lane] = 0;
+        maxPotSize[lane] = 0;
+        active[lane] = true;
+        return true;
+    }
+
+    /**
+     * Finish a long game on a WarEngine, which can tell if it repeats
+     */
+    private void finish(int lane, TournamentStats stats) {
+        int playerCount = playerTail[lane] - playerHead[lane];
+        int cpuCount = cpuTail[lane] - cpuHead[lane];
+        for (int i = 0; i < playerCount; i++) {
+            handoffPlayer[i] = cards[laneBase[lane] + ((playerHead[lane] + i) & RING_MASK)];
+        }
+        for (int i = 0; i < cpuCount; i++) {
+            handoffCpu[i] = cards[laneBase[lane] + RING + ((cpuHead[lane] + i) & RING_MASK)];
+        }
+
+        finisher.deal(handoffPlayer, playerCount, handoffCpu, cpuCount);
+        int winner = finisher.playGame();
+        stats.record(winner, rounds[lane] + finisher.getRounds(),
+            wars[lane] + finisher.getWars(),
+            Math.max(maxWarDepth[lane], finisher.getMaxWarDepth()),
+            Math.max(maxPotSize[lane], finisher.getMaxPotSize()),
+            finisher.getCycleLength());
+    }
+
+    /**
+     * Play the same tournament on WarEngines and in lockstep, check that they
+     * come out the same and compare the speed
+     * @param args the number of games (default 1,000,000) and the seed
+     * (default random)
+     */
+    public static void main(String[] args) {
+        long games = (args.length > 0) ? Long.parseLong(args[0]) : 1_000_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            TournamentStats scalar = new Tournament(games, seed).run();
+            double scalarSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            Tournament tournament = new Tournament(games, seed);
+            tournament.setBatchPlayers(LockstepEngine::new);
+            TournamentStats lockstep = tournament.run();
+            double lockstepSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Scalar:   %,12.0f games/s%n", games / scalarSeconds);
+            System.out.printf("Lockstep: %,12.0f games/s (%d lanes of %s)%n",
+                games / lockstepSeconds, new LockstepEngine().getLanes(), SPECIES);
+            if (scalar.getPlayerWins() != lockstep.getPlayerWins()
+                    || scalar.getCpuWins() != lockstep.getCpuWins()
+                    || scalar.getDraws() != lockstep.getDraws()
+                    || scalar.getMeanRounds() != lockstep.getMeanRounds()
+                    || scalar.getTotalWars() != lockstep.getTotalWars()
+                    || scalar.getMeanCycleLength() != lockstep.getMeanCycleLength()) {
+                System.out.println("Results differ!");
+                System.out.print(scalar);
+                System.out.print(lockstep);
+            }
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import engine.Rules;
+import engine.WarEngine;
+
+/**
+ * A Markov chain that approximates War, solved for every position at once
+ * instead of playing games one by one.
+ *
+ * A real position is the order of every card in both decks, far too many to
+ * enumerate. The model keeps only how many cards of each value band the
+ * player holds. The ranks are split into bands from the top down, so with
+ * bands of 1 and 12 ranks the state is the number of cards the player holds
+ * and how many of them are aces. The computer holds the rest. The model
+ * assumes each hand is in a random order, so every card played is drawn from
+ * the hand's mix of bands. Two cards of the same band are equal with the
+ * chance that two different cards of the band share a rank. Otherwise each
+ * side is as likely as the other to win. Values are ranked as in
+ * Card.getValue(), with the ace the highest, 13.
+ *
+ * A war is followed to its end as one step. The chain is built by the
+ * face-down and face-up draws of each round, weighted by how many of the
+ * hand's cards fit each draw. The transitions are stored as a sparse matrix
+ * in compressed rows. Gauss-Seidel sweeps then solve for the chance of
+ * winning and the expected number of rounds left from every state.
+ *
+ * The model knows nothing about the order of the cards, so it can't see the
+ * cycles that draw real games. It also ignores how the pot is picked up,
+ * because every hand is taken to be in a random order anyway.
+ */
+public class MarkovModel {
+    private static final double TOLERANCE = 1e-12;
+    private static final int MAX_SWEEPS = 1_000_000;
+
+    private final int ranks;
+    private final int suits;
+    private final int[] bands;
+    private final Rules rules;
+    private final int cards;
+    private final int faceDown;
+    private final boolean loseWhenShort;
+
+    // Cards in each band, and the chance two of them match
+    private final int[] bandCards;
+    private final double[] tieChance;
+    // Ways the face-down cards of a war can fall across the bands, by count
+    private final List<List<int[]>> splits = new ArrayList<>();
+    private final double[][] choose;
+
+    // A state is a number in a mixed radix, one digit per band
+    private final int[] radix;
+    private final int states;
+
+    // The chain: row i holds the chances of moving from state i to each
+    // other state, apart from staying put and winning outright
+    private int[] rowStart;
+    private int[] columns;
+    private double[] chances;
+    private double[] stay;
+    private double[] toWin;
+    private boolean[] over;
+    private int transitions;
+
+    private double[] winChance;
+    private double[] roundsLeft;
+    private int sweeps;
+
+    // Outcomes of rounds already worked out while the chain is built
+    private final Map<Long, Outcome> outcomes = new HashMap<>();
+    private final List<Tally> tallies = new ArrayList<>();
+    private int depth;
+
+    /**
+     * Create a model of a deck
+     * @param ranks the number of ranks in each suit
+     * @param suits the number of suits
+     * @param bands the number of ranks in each band, highest band first; they
+     * must add up to the number of ranks
+     * @param rules the rules to play by; only the face-down cards of a war
+     * and what a player short of cards does make a difference to the model
+     */
+    public MarkovModel(int ranks, int suits, int[] bands, Rules rules) {
+        int sum = 0;
+        for (int band : bands) {
+            if (band < 1) {
+                throw new IllegalArgumentException("Every band needs at least one rank");
+            }
+            sum += band;
+        }
+        if (sum != ranks) {
+            throw new IllegalArgumentException("The bands must cover all " + ranks + " ranks");
+        }
+        this.ranks = ranks;
+        this.suits = suits;
+        this.bands = bands.clone();
+        this.rules = rules;
+        this.cards = ranks * suits;
+        this.faceDown = rules.getFaceDownCards();
+        this.loseWhenShort = rules.getOutOfCards() == Rules.OutOfCards.LOSE_WAR;
+
+        bandCards = new int[bands.length];
+        tieChance = new double[bands.length];
+        radix = new int[bands.length];
+        long count = 1;
+        for (int b = 0; b < bands.length; b++) {
+            bandCards[b] = bands[b] * suits;
+            tieChance[b] = (bandCards[b] > 1) ? (suits - 1) / (double) (bandCards[b] - 1) : 0;
+            radix[b] = bandCards[b] + 1;
+            count *= radix[b];
+        }
+        if (count > 10_000_000) {
+            throw new IllegalArgumentException("Too many states: " + count);
+        }
+        states = (int) count;
+
+        choose = new double[cards + 1][cards + 1];
+        for (int n = 0; n <= cards; n++) {
+            choose[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                choose[n][k] = choose[n - 1][k - 1] + ((k < n) ? choose[n - 1][k] : 0);
+            }
+        }
+        for (int m = 0; m <= faceDown; m++) {
+            List<int[]> list = new ArrayList<>();
+            split(m, 0, new int[bands.length], list);
+            splits.add(list);
+        }
+    }
+
+    // Every way of dealing m cards across the bands from band b on
+    private void split(int m, int b, int[] counts, List<int[]> list) {
+        if (b == counts.length - 1) {
+            counts[b] = m;
+            list.add(counts.clone());
+            return;
+        }
+        for (int x = 0; x <= m; x++) {
+            counts[b] = x;
+            split(m - x, b + 1, counts, list);
+        }
+    }
+
+    /**
+     * Build the chain and solve it
+     * @return this model
+     */
+    public MarkovModel solve() {
+        build();
+        solveWinChance();
+        solveRoundsLeft();
+        return this;
+    }
+
+    // Build the chain one row at a time
+    private void build() {
+        rowStart = new int[states + 1];
+        stay = new double[states];
+        toWin = new double[states];
+        over = new boolean[states];
+        int[] cols = new int[1024];
+        double[] vals = new double[1024];
+        int used = 0;
+
+        int[] hand = new int[bands.length];
+        int[] other = new int[bands.length];
+        for (int s = 0; s < states; s++) {
+            rowStart[s] = used;
+            decode(s, hand);
+            int held = size(hand);
+            if (held == 0 || held == cards) {
+                over[s] = true;
+                continue;
+            }
+            for (int b = 0; b < hand.length; b++) {
+                other[b] = bandCards[b] - hand[b];
+            }
+
+            Outcome round = faceUp(hand, other);
+            toWin[s] = round.win;
+            if (used + round.states.length > cols.length) {
+                cols = Arrays.copyOf(cols, Math.max(cols.length * 2, used + round.states.length));
+                vals = Arrays.copyOf(vals, cols.length);
+            }
+            for (int i = 0; i < round.states.length; i++) {
+                if (round.states[i] == s) {
+                    stay[s] = round.chances[i];
+                } else {
+                    cols[used] = round.states[i];
+                    vals[used] = round.chances[i];
+                    used++;
+                }
+            }
+        }
+        rowStart[states] = used;
+        columns = Arrays.copyOf(cols, used);
+        chances = Arrays.copyOf(vals, used);
+        transitions = used;
+        outcomes.clear();
+    }
+
+    /**
+     * Where a round goes from the moment both players turn a card over: the
+     * chance of reaching each state, and of the player winning outright. It
+     * depends only on what is left in each hand, not on what is already in
+     * the pot, since whoever takes the pot ends up with every card the other
+     * doesn't still hold. So wars that reach the same hands by different
+     * draws share one outcome.
+     */
+    private static class Outcome {
+        final int[] states;
+        final double[] chances;
+        final double win;
+
+        Outcome(int[] states, double[] chances, double win) {
+            this.states = states;
+            this.chances = chances;
+            this.win = win;
+        }
+    }
+
+    // Adds up an outcome, one scratch row for each level of war
+    private class Tally {
+        final double[] row = new double[states];
+        final int[] touched = new int[states];
+        int count;
+        double win;
+
+        void add(int state, double chance) {
+            if (row[state] == 0) {
+                touched[count++] = state;
+            }
+            row[state] += chance;
+        }
+
+        void add(Outcome outcome, double chance) {
+            for (int i = 0; i < outcome.states.length; i++) {
+                add(outcome.states[i], chance * outcome.chances[i]);
+            }
+            win += chance * outcome.win;
+        }
+
+        Outcome finish() {
+            int[] to = Arrays.copyOf(touched, count);
+            double[] chance = new double[count];
+            for (int i = 0; i < count; i++) {
+                chance[i] = row[to[i]];
+                row[to[i]] = 0;
+            }
+            Outcome outcome = new Outcome(to, chance, win);
+            count = 0;
+            win = 0;
+            return outcome;
+        }
+    }
+
+    // Each player turns a card over from their hand. The hands are the same
+    // again when this returns.
+    private Outcome faceUp(int[] hand, int[] other) {
+        long key = (long) encode(hand) * states + encode(other);
+        Outcome outcome = outcomes.get(key);
+        if (outcome != null) {
+            return outcome;
+        }
+        if (depth == tallies.size()) {
+            tallies.add(new Tally());
+        }
+        Tally tally = tallies.get(depth++);
+
+        int handSize = size(hand);
+        int otherSize = size(other);
+        for (int i = 0; i < hand.length; i++) {
+            if (hand[i] == 0) {
+                continue;
+            }
+            double wi = (double) hand[i] / handSize;
+            hand[i]--;
+            for (int j = 0; j < other.length; j++) {
+                if (other[j] == 0) {
+                    continue;
+                }
+                double w = wi * other[j] / otherSize;
+                other[j]--;
+                if (i < j) {
+                    playerTakes(tally, other, w);
+                } else if (i > j) {
+                    cpuTakes(tally, hand, w);
+                } else {
+                    double q = tieChance[i];
+                    playerTakes(tally, other, w * (1 - q) / 2);
+                    cpuTakes(tally, hand, w * (1 - q) / 2);
+                    if (q > 0) {
+                        war(tally, hand, other, w * q);
+                    }
+                }
+                other[j]++;
+            }
+            hand[i]++;
+        }
+
+        depth--;
+        outcome = tally.finish();
+        outcomes.put(key, outcome);
+        return outcome;
+    }
+
+    // The cards turned over were equal
+    private void war(Tally tally, int[] hand, int[] other, double weight) {
+        int handSize = size(hand);
+        int otherSize = size(other);
+        if (loseWhenShort) {
+            boolean playerShort = handSize <= faceDown;
+            boolean cpuShort = otherSize <= faceDown;
+            if (playerShort && !cpuShort) {
+                return;
+            } else if (cpuShort && !playerShort) {
+                tally.win += weight;
+                return;
+            }
+        }
+
+        // Each player keeps one card back to turn over
+        int playerDown = Math.max(0, Math.min(faceDown, handSize - 1));
+        int cpuDown = Math.max(0, Math.min(faceDown, otherSize - 1));
+        for (int[] x : splits.get(playerDown)) {
+            double px = dealChance(hand, handSize, x);
+            if (px == 0) {
+                continue;
+            }
+            subtract(hand, x);
+            for (int[] y : splits.get(cpuDown)) {
+                double py = dealChance(other, otherSize, y);
+                if (py == 0) {
+                    continue;
+                }
+                subtract(other, y);
+                if (handSize == 0) {
+                    // Nobody takes the pot, and the player is out
+                } else if (otherSize == 0) {
+                    tally.win += weight * px * py;
+                } else {
+                    tally.add(faceUp(hand, other), weight * px * py);
+                }
+                add(other, y);
+            }
+            add(hand, x);
+        }
+    }
+
+    // The chance that the cards dealt from a hand fall across the bands as given
+    private double dealChance(int[] from, int fromSize, int[] counts) {
+        double ways = 1;
+        int total = 0;
+        for (int b = 0; b < counts.length; b++) {
+            if (counts[b] > from[b]) {
+                return 0;
+            }
+            ways *= choose[from[b]][counts[b]];
+            total += counts[b];
+        }
+        return ways / choose[fromSize][total];
+    }
+
+    // The player takes the pot: the computer keeps only what is in its hand
+    private void playerTakes(Tally tally, int[] other, double chance) {
+        int held = 0;
+        int state = 0;
+        for (int b = other.length - 1; b >= 0; b--) {
+            int mine = bandCards[b] - other[b];
+            held += mine;
+            state = state * radix[b] + mine;
+        }
+        if (held == cards) {
+            tally.win += chance;
+        } else {
+            tally.add(state, chance);
+        }
+    }
+
+    // The computer takes the pot: the player keeps only what is in their
+    // hand, and loses if that is nothing
+    private void cpuTakes(Tally tally, int[] hand, double chance) {
+        if (size(hand) > 0) {
+            tally.add(encode(hand), chance);
+        }
+    }
+
+    // Solve x = P x + w for the chance of winning from each state
+    private void solveWinChance() {
+        winChance = new double[states];
+        int[] counts = new int[bands.length];
+        for (int s = 0; s < states; s++) {
+            decode(s, counts);
+            winChance[s] = (size(counts) == cards) ? 1 : 0;
+        }
+        sweeps = gaussSeidel(winChance, toWin);
+    }
+
+    // Solve t = P t + 1 for the expected number of rounds left from each state
+    private void solveRoundsLeft() {
+        roundsLeft = new double[states];
+        double[] ones = new double[states];
+        for (int s = 0; s < states; s++) {
+            if (!over[s]) {
+                ones[s] = 1;
+            }
+        }
+        sweeps += gaussSeidel(roundsLeft, ones);
+    }
+
+    // Sweep until no value moves by more than the tolerance, relative to the
+    // largest value
+    private int gaussSeidel(double[] x, double[] constant) {
+        int count = 0;
+        double residual;
+        double largest;
+        do {
+            residual = 0;
+            largest = 1;
+            for (int s = 0; s < states; s++) {
+                if (over[s]) {
+                    continue;
+                }
+                double sum = constant[s];
+                for (int k = rowStart[s]; k < rowStart[s + 1]; k++) {
+                    sum += chances[k] * x[columns[k]];
+                }
+                double next = sum / (1 - stay[s]);
+                residual = Math.max(residual, Math.abs(next - x[s]));
+                largest = Math.max(largest, next);
+                x[s] = next;
+            }
+            count++;
+            if (count == MAX_SWEEPS) {
+                throw new IllegalStateException("The chain did not converge");
+            }
+        } while (residual > TOLERANCE * largest);
+        return count;
+    }
+
+    /**
+     * Get the chance that the player wins from a hand
+     * @param counts the number of cards of each band the player holds
+     */
+    public double getWinProbability(int[] counts) {
+        return winChance[encode(counts)];
+    }
+
+    /**
+     * Get the expected number of rounds left from a hand
+     * @param counts the number of cards of each band the player holds
+     */
+    public double getExpectedRounds(int[] counts) {
+        return roundsLeft[encode(counts)];
+    }
+
+    /**
+     * Get the chance that the player's half of a random deal holds the given
+     * cards of each band
+     * @param counts the number of cards of each band the player holds
+     */
+    public double getDealProbability(int[] counts) {
+        if (size(counts) != cards / 2) {
+            return 0;
+        }
+        double ways = 1;
+        for (int b = 0; b < counts.length; b++) {
+            ways *= choose[bandCards[b]][counts[b]];
+        }
+        return ways / choose[cards][cards / 2];
+    }
+
+    /**
+     * Get the chance that the player wins a random deal
+     */
+    public double getWinProbability() {
+        return overDeals(winChance);
+    }
+
+    /**
+     * Get the expected length of a random deal, in rounds
+     */
+    public double getExpectedRounds() {
+        return overDeals(roundsLeft);
+    }
+
+    private double overDeals(double[] x) {
+        double total = 0;
+        int[] counts = new int[bands.length];
+        for (int s = 0; s < states; s++) {
+            decode(s, counts);
+            total += getDealProbability(counts) * x[s];
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of states in the chain
+     */
+    public int getStates() {
+        return states;
+    }
+
+    /**
+     * Get the number of transitions stored, not counting a state to itself
+     */
+    public int getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Get the number of Gauss-Seidel sweeps the solution took
+     */
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Get the band of each card value, so hands of real cards can be looked up
+     * @param values the value of each card, indexed by card id, as the rules
+     * apply them
+     * @return the band of each card id
+     */
+    public int[] bandsOf(int[] values) {
+        int[] distinct = Arrays.stream(values).distinct().sorted().toArray();
+        int[] bandOfRank = new int[ranks];
+        int rank = ranks - 1;
+        for (int b = 0; b < bands.length; b++) {
+            for (int i = 0; i < bands[b]; i++) {
+                bandOfRank[rank--] = b;
+            }
+        }
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = bandOfRank[Arrays.binarySearch(distinct, values[i])];
+        }
+        return result;
+    }
+
+    private int encode(int[] counts) {
+        int state = 0;
+        for (int b = counts.length - 1; b >= 0; b--) {
+            state = state * radix[b] + counts[b];
+        }
+        return state;
+    }
+
+    private void decode(int state, int[] counts) {
+        for (int b = 0; b < counts.length; b++) {
+            counts[b] = state % radix[b];
+            state /= radix[b];
+        }
+    }
+
+    private static int size(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static void subtract(int[] counts, int[] x) {
+        for (int b = 0; b < counts.length; b++) {
+            counts[b] -= x[b];
+        }
+    }
+
+    private static void add(int[] counts, int[] x) {
+        for (int b = 0; b < counts.length; b++) {
+            counts[b] += x[b];
+        }
+    }
+
+    /**
+     * Solve the model and check it against games played on a WarEngine. Deals
+     * are grouped by how many cards of the top band the player starts with,
+     * and for each group the model's chance of winning and expected length are
+     * set beside the results of the games that weren't drawn.
+     * @param args the config (default "bands=1,12"; the rules, plus ranks,
+     * suits and bands as a comma separated list), the number of games
+     * (default 200,000) and the seed (default random)
+     */
+    public static void main(String[] args) {
+        String config = (args.length > 0) ? args[0] : "bands=1,12";
+        long games = (args.length > 1) ? Long.parseLong(args[1]) : 200_000;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+
+        Rules rules = Rules.parse(config);
+        int[] values = Rules.deckValues(config);
+        int ranks = Arrays.stream(values).max().getAsInt();
+        int suits = values.length / ranks;
+        int[] bands = { 1, ranks - 1 };
+        for (String setting : config.trim().split("\\s+")) {
+            if (setting.startsWith("bands=")) {
+                bands = Arrays.stream(setting.substring(6).split(","))
+                    .mapToInt(Integer::parseInt).toArray();
+            }
+        }
+
+        long start = System.nanoTime();
+        MarkovModel model = new MarkovModel(ranks, suits, bands, rules).solve();
+        double modelSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Play the games, grouped by the top band cards in the player's deal
+        WarEngine engine = new WarEngine(values, rules);
+        int[] bandOf = model.bandsOf(rules.applyTo(values));
+        int top = model.bandCards[0];
+        long[] dealt = new long[top + 1];
+        long[] won = new long[top + 1];
+        long[] drawn = new long[top + 1];
+        long[] rounds = new long[top + 1];
+        start = System.nanoTime();
+        for (long i = 0; i < games; i++) {
+            engine.deal(seed, i);
+            int a = 0;
+            for (int card : engine.getCards(WarEngine.PLAYER)) {
+                if (bandOf[card] == 0) {
+                    a++;
+                }
+            }
+            int winner = engine.playGame();
+            dealt[a]++;
+            if (winner == WarEngine.DRAW) {
+                drawn[a]++;
+            } else {
+                rounds[a] += engine.getRounds();
+                if (winner == WarEngine.PLAYER) {
+                    won[a]++;
+                }
+            }
+        }
+        double gameSeconds = (System.nanoTime() - start) / 1e9;
+
+        // What the model expects for each group, over the rest of the deal
+        double[] groupChance = new double[top + 1];
+        double[] groupWin = new double[top + 1];
+        double[] groupRounds = new double[top + 1];
+        int[] counts = new int[bands.length];
+        for (int s = 0; s < model.states; s++) {
+            model.decode(s, counts);
+            double p = model.getDealProbability(counts);
+            groupChance[counts[0]] += p;
+            groupWin[counts[0]] += p * model.winChance[s];
+            groupRounds[counts[0]] += p * model.roundsLeft[s];
+        }
+
+        System.out.printf("Rules: %s, bands %s%n", rules, Arrays.toString(bands));
+        System.out.printf("Model: %,d states, %,d transitions, %,d sweeps, solved in %.3f s%n",
+            model.getStates(), model.getTransitions(), model.getSweeps(), modelSeconds);
+        System.out.printf("Games: %,d in %.3f s (seed %d)%n", games, gameSeconds, seed);
+        System.out.printf("%6s%10s%12s%12s%9s%12s%12s%9s%n", "top", "deals", "model win",
+            "games win", "z", "model len", "games len", "drawn");
+        long totalDecided = 0;
+        long totalWon = 0;
+        long totalRounds = 0;
+        long totalDrawn = 0;
+        for (int a = 0; a <= top; a++) {
+            long decided = dealt[a] - drawn[a];
+            totalDecided += decided;
+            totalWon += won[a];
+            totalRounds += rounds[a];
+            totalDrawn += drawn[a];
+            if (decided == 0) {
+                continue;
+            }
+            double modelWin = groupWin[a] / groupChance[a];
+            System.out.printf("%6d%10d%11.2f%%%11.2f%%%9.1f%12.1f%12.1f%8.1f%%%n", a, dealt[a],
+                100 * modelWin, 100.0 * won[a] / decided, z(won[a], decided, modelWin),
+                groupRounds[a] / groupChance[a], (double) rounds[a] / decided,
+                100.0 * drawn[a] / dealt[a]);
+        }
+        System.out.printf("%6s%10d%11.2f%%%11.2f%%%9.1f%12.1f%12.1f%8.1f%%%n", "all", games,
+            100 * model.getWinProbability(), 100.0 * totalWon / totalDecided,
+            z(totalWon, totalDecided, model.getWinProbability()), model.getExpectedRounds(),
+            (double) totalRounds / totalDecided, 100.0 * totalDrawn / games);
+    }
+
+    // How many standard errors the games are from the model
+    private static double z(long wins, long games, double expected) {
+        double se = Math.sqrt(expected * (1 - expected) / games);
+        return (se == 0) ? 0 : (wins / (double) games - expected) / se;
+    }
+}
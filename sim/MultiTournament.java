@@ -0,0 +1,134 @@
+package sim;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import engine.MultiWarEngine;
+
+/**
+ * Plays many games of War at tables of more than two players and reports how
+ * long they last and whether any seat has an advantage. The work is split
+ * the same way as a Tournament's: the range of games is halved recursively
+ * on a fork/join pool, each worker thread plays on its own engine into its
+ * own totals, and the totals are merged at the end. Game i is always dealt
+ * from (seed, i).
+ */
+public class MultiTournament {
+    private final int players;
+    private final long games;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a tournament that uses every core
+     * @param players the number of players at each table
+     * @param games the number of games to play
+     * @param seed the seed that the deals are made from
+     */
+    public MultiTournament(int players, long games, long seed) {
+        this(players, games, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a tournament that runs on the given pool
+     * @param players the number of players at each table
+     * @param games the number of games to play
+     * @param seed the seed that the deals are made from
+     * @param pool the pool to play the games on
+     */
+    public MultiTournament(int players, long games, long seed, ForkJoinPool pool) {
+        this.players = players;
+        this.games = games;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    /**
+     * Play all the games. Each run starts with fresh workers.
+     * @return the merged totals
+     */
+    public TournamentStats run() {
+        Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Worker> worker = ThreadLocal.withInitial(() -> {
+            Worker w = new Worker(players);
+            workers.add(w);
+            return w;
+        });
+
+        // Enough leaves per worker to balance the load
+        long leafSize = Math.max(256, games / (pool.getParallelism() * 16L));
+        pool.invoke(new Batch(0, games, leafSize, worker));
+
+        TournamentStats stats = new TournamentStats(players);
+        for (Worker w : workers) {
+            stats.merge(w.stats);
+        }
+        return stats;
+    }
+
+    // The engine and totals that belong to one thread
+    private static class Worker {
+        final MultiWarEngine engine;
+        final TournamentStats stats;
+
+        Worker(int players) {
+            engine = new MultiWarEngine(players);
+            stats = new TournamentStats(players);
+        }
+    }
+
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long first;
+        private final long end;
+        private final long leafSize;
+        private final ThreadLocal<Worker> worker;
+
+        Batch(long first, long end, long leafSize, ThreadLocal<Worker> worker) {
+            this.first = first;
+            this.end = end;
+            this.leafSize = leafSize;
+            this.worker = worker;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first <= leafSize) {
+                Worker w = worker.get();
+                for (long i = first; i < end; i++) {
+                    w.engine.deal(seed, i);
+                    w.stats.record(w.engine, w.engine.playGame());
+                }
+                return;
+            }
+
+            long middle = (first + end) >>> 1;
+            invokeAll(new Batch(first, middle, leafSize, worker),
+                new Batch(middle, end, leafSize, worker));
+        }
+    }
+
+    /**
+     * Run a tournament from the command line
+     * @param args the number of players (default 4), the number of games
+     * (default 100,000) and the seed (default random)
+     */
+    public static void main(String[] args) {
+        int players = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        long games = (args.length > 1) ? Long.parseLong(args[1]) : 100_000;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        TournamentStats stats = new MultiTournament(players, games, seed).run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Seed:           %d%n", seed);
+        System.out.printf("Players:        %d%n", players);
+        System.out.print(stats);
+        System.out.printf("Time:           %.2f s (%,.0f games/s on %d threads)%n",
+            seconds, games / seconds, ForkJoinPool.commonPool().getParallelism());
+    }
+}
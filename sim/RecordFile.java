@@ -0,0 +1,117 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads games back from a file written by RecordWriter. The file is memory
+ * mapped rather than read, a window at a time since one mapping can't cover
+ * more than 2 GB, and opening it builds an index of where each record starts.
+ * After that any game can be read in constant time without touching the rest
+ * of the file.
+ */
+public class RecordFile implements Closeable {
+    private static final long WINDOW_SIZE = 256L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    // Where the last whole record ends
+    private final long end;
+    private long[] offsets = new long[1024];
+    private int games;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * Open a record file and index the games in it
+     * @param file the file to read
+     * @throws IOException if the file cannot be read, or is not a record file
+     */
+    public RecordFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+
+        byte[] magic = new byte[RecordWriter.MAGIC.length];
+        if (size < magic.length) {
+            throw new IOException(file + " is not a game record file");
+        }
+        map(0, magic.length);
+        window.get(magic);
+        if (!Arrays.equals(magic, RecordWriter.MAGIC)) {
+            throw new IOException(file + " is not a game record file");
+        }
+
+        // Each record starts with its length, so the index only needs to read
+        // a few bytes of each one. A record cut short, as by a crash part way
+        // through writing it, ends the index.
+        long offset = magic.length;
+        while (offset < size) {
+            map(offset, 5);
+            long next;
+            try {
+                long length = GameRecord.getVarint(window);
+                next = windowStart + window.position() + length;
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+            if (next > size || next <= offset) {
+                break;
+            }
+
+            if (games == offsets.length) {
+                offsets = Arrays.copyOf(offsets, games * 2);
+            }
+            offsets[games++] = offset;
+            offset = next;
+        }
+        end = offset;
+    }
+
+    /**
+     * Get the number of games in the file
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Read one game
+     * @param game the position of the game in the file, counting from 0
+     * @param record the record to read the game into
+     * @throws IOException if the file cannot be read
+     * @throws IndexOutOfBoundsException if there is no such game
+     */
+    public void read(int game, GameRecord record) throws IOException {
+        if (game < 0 || game >= games) {
+            throw new IndexOutOfBoundsException("Game " + game + " of " + games);
+        }
+        long start = offsets[game];
+        long stop = (game + 1 < games) ? offsets[game + 1] : end;
+        map(start, (int) (stop - start));
+        record.decode(window);
+    }
+
+    // Make sure the window covers the given range and position it at the start
+    private void map(long start, int length) throws IOException {
+        long end = Math.min(start + length, size);
+        if (window == null || start < windowStart || end > windowStart + window.capacity()) {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(Math.max(WINDOW_SIZE, length), size - start));
+        }
+        window.position((int) (start - windowStart));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
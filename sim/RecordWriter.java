@@ -0,0 +1,111 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends game records to a file. Records are collected in a large direct
+ * buffer and written to the file channel a whole buffer at a time, so the cost
+ * of a write call is shared by thousands of games. Writing is synchronized so
+ * one writer can be shared by many threads; each thread encodes its records
+ * into its own GameRecord first, so the lock is only held for a copy.
+ *
+ * <p>A file starts with the 4 bytes "WARR" and a format version byte,
+ * followed by the records one after another.
+ */
+public class RecordWriter implements Closeable {
+    /** The bytes every record file starts with */
+    static final byte[] MAGIC = { 'W', 'A', 'R', 'R', 1 };
+
+    private static final int BUFFER_SIZE = 4 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long games;
+
+    /**
+     * Open a record file for appending, creating it if it does not exist
+     * @param file the file to write to
+     * @throws IOException if the file cannot be opened
+     */
+    public RecordWriter(Path file) throws IOException {
+        this(file, BUFFER_SIZE);
+    }
+
+    /**
+     * Open a record file for appending with a buffer of a given size. A
+     * writer that only adds a game or two needs far less than the default.
+     * Records longer than the buffer are written straight to the file.
+     * @param file the file to write to
+     * @param bufferSize the number of bytes to collect before writing them
+     * @throws IOException if the file cannot be opened
+     */
+    public RecordWriter(Path file, int bufferSize) throws IOException {
+        if (bufferSize < MAGIC.length) {
+            throw new IllegalArgumentException("A buffer of " + bufferSize + " bytes is too small");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+        if (channel.size() == 0) {
+            buffer.put(MAGIC);
+        }
+    }
+
+    /**
+     * Add a game to the file
+     * @param record the game to add
+     * @throws IOException if the file cannot be written
+     */
+    public void write(GameRecord record) throws IOException {
+        byte[] bytes = record.encode();
+        write(bytes, record.getEncodedLength());
+    }
+
+    /**
+     * Add an already encoded game to the file
+     * @param bytes the encoded record
+     * @param length the number of bytes in the record
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void write(byte[] bytes, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+        if (length > buffer.capacity()) {
+            channel.write(ByteBuffer.wrap(bytes, 0, length));
+        } else {
+            buffer.put(bytes, 0, length);
+        }
+        games++;
+    }
+
+    /**
+     * Write everything buffered so far to the file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Get the number of games written
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,219 @@
+package sim;
+
+import engine.WarEngine;
+
+/**
+ * Plays every possible deal of a reduced deck and reports the exact
+ * distribution of outcomes and game lengths.
+ *
+ * Only card values matter to the rules, so two deals that differ only in the
+ * suits of the cards play out the same way. The solver therefore enumerates
+ * the distinct orders of the card values (each of which stands for the same
+ * number of real deals, k!^ranks for k suits) rather than every order of the
+ * cards. Positions reached along the way are kept in a transposition table,
+ * so when a game reaches a position that another game has already been
+ * through, its result is known without playing the rest of it.
+ */
+public class Solver {
+    private final int ranks;
+    private final int suits;
+    private final int cards;
+    private final int bitsPerCard;
+    private final WarEngine engine;
+    private final TranspositionTable table;
+
+    // The positions of the game being solved, so they can be stored once its
+    // outcome is known
+    private final long[] pathKeys;
+    private final int[] pathShapes;
+
+    private long deals;
+    private long playerWins;
+    private long cpuWins;
+    private long draws;
+    private long totalRounds;
+    private final Histogram rounds = new Histogram(16);
+
+    /**
+     * Create a solver for a deck of the given size
+     * @param ranks the number of different card values
+     * @param suits the number of cards of each value
+     * @param tableBits the transposition table holds 2^tableBits positions
+     */
+    public Solver(int ranks, int suits, int tableBits) {
+        this.ranks = ranks;
+        this.suits = suits;
+        this.cards = ranks * suits;
+        this.bitsPerCard = Math.max(1, 32 - Integer.numberOfLeadingZeros(ranks - 1));
+        if (cards * bitsPerCard > 64) {
+            throw new IllegalArgumentException("Deck too big to pack into 64 bits");
+        }
+
+        // Ids are the card values themselves
+        int[] values = new int[Math.max(cards, ranks + 1)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        this.engine = new WarEngine(values);
+        this.table = new TranspositionTable(tableBits);
+
+        // A game can't last longer than the number of positions it can reach
+        // before repeating, but the engine calls a draw well before then
+        this.pathKeys = new long[1 << 16];
+        this.pathShapes = new int[1 << 16];
+    }
+
+    /**
+     * Solve every deal
+     */
+    public void solve() {
+        int[] order = new int[cards];
+        for (int i = 0; i < cards; i++) {
+            order[i] = i / suits + 1;
+        }
+
+        do {
+            solve(order);
+        } while (nextPermutation(order));
+    }
+
+    private void solve(int[] order) {
+        engine.deal(order);
+
+        int depth = 0;
+        int outcome;
+        int remaining;
+        while (true) {
+            if (engine.isOver()) {
+                outcome = engine.getWinner();
+                remaining = 0;
+                break;
+            }
+
+            long key = packValues();
+            int shape = engine.getCardCount(WarEngine.PLAYER) << 8
+                | engine.getCardCount(WarEngine.CPU);
+            int slot = table.find(key, shape);
+            if (slot >= 0) {
+                outcome = table.getOutcome(slot);
+                remaining = table.getLength(slot);
+                break;
+            }
+
+            if (depth == pathKeys.length) {
+                throw new IllegalStateException("Game too long to solve");
+            }
+            pathKeys[depth] = key;
+            pathShapes[depth] = shape;
+            depth++;
+            engine.playRound();
+        }
+
+        // Every position on the way has the same outcome
+        for (int i = depth - 1; i >= 0; i--) {
+            remaining++;
+            table.store(pathKeys[i], pathShapes[i], outcome, remaining);
+        }
+
+        deals++;
+        if (outcome == WarEngine.PLAYER) {
+            playerWins++;
+        } else if (outcome == WarEngine.CPU) {
+            cpuWins++;
+        } else {
+            draws++;
+            return;
+        }
+        totalRounds += remaining;
+        rounds.record(remaining);
+    }
+
+    private long packValues() {
+        long key = 0;
+        for (int who = WarEngine.PLAYER; who <= WarEngine.CPU; who++) {
+            int count = engine.getCardCount(who);
+            for (int i = 0; i < count; i++) {
+                key = (key << bitsPerCard) | (engine.getCard(who, i) - 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Rearrange the values into the next order, in lexicographic order. Equal
+     * values are never swapped, so each distinct order comes up once.
+     * @return false if the values were already in the last order
+     */
+    private static boolean nextPermutation(int[] a) {
+        int i = a.length - 2;
+        while (i >= 0 && a[i] >= a[i + 1]) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        int j = a.length - 1;
+        while (a[j] <= a[i]) {
+            j--;
+        }
+        swap(a, i, j);
+        for (int lo = i + 1, hi = a.length - 1; lo < hi; lo++, hi--) {
+            swap(a, lo, hi);
+        }
+        return true;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    @Override
+    public String toString() {
+        long finished = playerWins + cpuWins;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Deck:           %d ranks x %d suits%n", ranks, suits));
+        sb.append(String.format("Value orders:   %,d (each is %,d deals)%n", deals, dealsPerOrder()));
+        sb.append(String.format("Player wins:    %,d (%.6f)%n", playerWins, playerWins / (double) deals));
+        sb.append(String.format("CPU wins:       %,d (%.6f)%n", cpuWins, cpuWins / (double) deals));
+        sb.append(String.format("Drawn by cycle: %,d (%.6f)%n", draws, draws / (double) deals));
+        sb.append(String.format("Mean rounds:    %.4f%n", (finished == 0) ? 0 : totalRounds / (double) finished));
+        sb.append(String.format("Rounds p50/p99/max: %d / %d / %d%n", rounds.getValueAtPercentile(50),
+            rounds.getValueAtPercentile(99), rounds.getMax()));
+        sb.append(String.format("Table:          %,d hits, %,d misses, %,d evictions%n",
+            table.getHits(), table.getMisses(), table.getEvictions()));
+        return sb.toString();
+    }
+
+    private long dealsPerOrder() {
+        long factorial = 1;
+        for (int i = 2; i <= suits; i++) {
+            factorial *= i;
+        }
+        long deals = 1;
+        for (int i = 0; i < ranks; i++) {
+            deals *= factorial;
+        }
+        return deals;
+    }
+
+    /**
+     * Solve a deck from the command line
+     * @param args the number of ranks (default 3), the number of suits
+     * (default 4) and the log2 size of the transposition table (default 22)
+     */
+    public static void main(String[] args) {
+        int ranks = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int suits = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int tableBits = (args.length > 2) ? Integer.parseInt(args[2]) : 22;
+
+        long start = System.nanoTime();
+        Solver solver = new Solver(ranks, suits, tableBits);
+        solver.solve();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.print(solver);
+        System.out.printf("Time:           %.2f s%n", seconds);
+    }
+}
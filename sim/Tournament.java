@@ -0,0 +1,210 @@
+package sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import engine.WarEngine;
+
+/**
+ * Plays a large number of independent games of War on every core and reports
+ * how they turned out. The range of games is split in half recursively on a
+ * fork/join pool so idle workers can steal work. Each worker thread plays
+ * its games on its own engine into its own totals, and the totals are merged
+ * once every game has been played. Game i of a run is always dealt from
+ * (seed, i), so the results are the same however the work is split.
+ *
+ * <p>Games can also be played by something other than a WarEngine, such as
+ * the LockstepEngine that plays them many at a time in SIMD lanes. It is
+ * only built by the vector profile (mvn -Pvector), since it needs the
+ * incubating Vector API.
+ */
+public class Tournament {
+    private final long games;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private RecordWriter records;
+    private Supplier<BatchPlayer> batchPlayers;
+
+    /**
+     * Plays a range of games into a set of totals. Each worker thread gets
+     * its own.
+     */
+    public interface BatchPlayer {
+        /**
+         * Play a range of games and record them
+         * @param seed the seed of the run
+         * @param first the index of the first game
+         * @param end the index after the last game
+         * @param stats the totals to record the games in
+         */
+        void play(long seed, long first, long end, TournamentStats stats);
+    }
+
+    /**
+     * Create a tournament that uses every core
+     * @param games the number of games to play
+     * @param seed the seed that the deals are made from
+     */
+    public Tournament(long games, long seed) {
+        this(games, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a tournament that runs on the given pool
+     * @param games the number of games to play
+     * @param seed the seed that the deals are made from
+     * @param pool the pool to play the games on
+     */
+    public Tournament(long games, long seed, ForkJoinPool pool) {
+        this.games = games;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    /**
+     * Record every game played to a file
+     * @param records the writer to record the games with, or null for none
+     */
+    public void setRecordWriter(RecordWriter records) {
+        this.records = records;
+    }
+
+    /**
+     * Play the games with something other than a WarEngine. Games that are
+     * being recorded are always played on a WarEngine.
+     * @param batchPlayers makes a player for each worker thread, or null to
+     * play on WarEngines
+     */
+    public void setBatchPlayers(Supplier<BatchPlayer> batchPlayers) {
+        this.batchPlayers = batchPlayers;
+    }
+
+    /**
+     * Play all the games. Each run starts with fresh workers, so running a
+     * tournament again doesn't add to the totals of the last run.
+     * @return the merged totals
+     */
+    public TournamentStats run() {
+        Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Worker> worker = ThreadLocal.withInitial(() -> {
+            Worker w = new Worker();
+            workers.add(w);
+            return w;
+        });
+
+        // Enough leaves per worker to balance the load
+        long leafSize = Math.max(1024, games / (pool.getParallelism() * 16L));
+        pool.invoke(new Batch(0, games, leafSize, worker));
+
+        TournamentStats stats = new TournamentStats();
+        for (Worker w : workers) {
+            stats.merge(w.stats);
+        }
+        return stats;
+    }
+
+    // The engine and totals that belong to one thread
+    private static class Worker {
+        final WarEngine engine = new WarEngine();
+        final TournamentStats stats = new TournamentStats();
+        final GameRecord record = new GameRecord();
+        BatchPlayer player;
+    }
+
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long first;
+        private final long end;
+        private final long leafSize;
+        private final ThreadLocal<Worker> worker;
+
+        Batch(long first, long end, long leafSize, ThreadLocal<Worker> worker) {
+            this.first = first;
+            this.end = end;
+            this.leafSize = leafSize;
+            this.worker = worker;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first <= leafSize) {
+                play();
+                return;
+            }
+
+            long middle = (first + end) >>> 1;
+            invokeAll(new Batch(first, middle, leafSize, worker),
+                new Batch(middle, end, leafSize, worker));
+        }
+
+        private void play() {
+            Worker w = worker.get();
+            if (batchPlayers != null && records == null) {
+                if (w.player == null) {
+                    w.player = batchPlayers.get();
+                }
+                w.player.play(seed, first, end, w.stats);
+                return;
+            }
+            for (long i = first; i < end; i++) {
+                w.engine.deal(seed, i);
+                if (records == null) {
+                    w.stats.record(w.engine, w.engine.playGame());
+                } else {
+                    w.stats.record(w.engine, playRecorded(w, i));
+                }
+            }
+        }
+
+        private int playRecorded(Worker w, long gameIndex) {
+            w.record.start(seed, gameIndex, w.engine);
+            while (!w.engine.isOver()) {
+                int winner = w.engine.playRound();
+                w.record.addRound(winner, w.engine.getWarDepth());
+            }
+            w.record.finish(w.engine);
+
+            try {
+                records.write(w.record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return w.engine.getWinner();
+        }
+    }
+
+    /**
+     * Run a tournament from the command line
+     * @param args the number of games (default 1,000,000), the seed (default
+     * random) and a file to record the games to (default none)
+     */
+    public static void main(String[] args) throws IOException {
+        long games = (args.length > 0) ? Long.parseLong(args[0]) : 1_000_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+
+        long start = System.nanoTime();
+        Tournament tournament = new Tournament(games, seed);
+        TournamentStats stats;
+        if (args.length > 2) {
+            try (RecordWriter records = new RecordWriter(Path.of(args[2]))) {
+                tournament.setRecordWriter(records);
+                stats = tournament.run();
+            }
+        } else {
+            stats = tournament.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Seed:           %d%n", seed);
+        System.out.print(stats);
+        System.out.printf("Time:           %.2f s (%,.0f games/s on %d threads)%n",
+            seconds, games / seconds, ForkJoinPool.commonPool().getParallelism());
+    }
+}
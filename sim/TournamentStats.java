@@ -0,0 +1,280 @@
+package sim;
+
+import engine.MultiWarEngine;
+import engine.WarEngine;
+
+/**
+ * Totals and distributions for a batch of games. Each worker thread fills in
+ * its own and they are merged once the work is done, so recording a game
+ * never needs a lock. Games of two players count the player's and the
+ * computer's wins; games at bigger tables count the wins of every seat.
+ */
+public class TournamentStats {
+    // Values are kept to within 1 part in 128
+    private static final int PRECISION = 8;
+
+    private long games;
+    private final long[] seatWins;
+    // Games where everyone ran out of cards at once
+    private long nobodyLeft;
+    private long draws;
+    private long totalCycleLength;
+    private long totalRounds;
+    private long totalWars;
+    private final Histogram rounds = new Histogram(PRECISION);
+    private final Histogram wars = new Histogram(PRECISION);
+    private final Histogram warDepths = new Histogram(PRECISION);
+    private final Histogram potSizes = new Histogram(PRECISION);
+
+    /**
+     * Create totals for games of two players
+     */
+    public TournamentStats() {
+        this(2);
+    }
+
+    /**
+     * Create totals for games at a table
+     * @param seats the number of players at the table
+     */
+    public TournamentStats(int seats) {
+        seatWins = new long[seats];
+    }
+
+    /**
+     * Record the result of a game that the engine has just played
+     * @param engine the engine that played the game
+     * @param winner the winner of the game, or WarEngine.DRAW
+     */
+    public void record(WarEngine engine, int winner) {
+        record(winner, engine.getRounds(), engine.getWars(), engine.getMaxWarDepth(),
+            engine.getMaxPotSize(), engine.getCycleLength());
+    }
+
+    /**
+     * Record the result of a game played some other way than on a WarEngine
+     * @param winner the winner of the game, or WarEngine.DRAW
+     * @param gameRounds the number of rounds played
+     * @param gameWars the number of wars fought
+     * @param maxWarDepth the longest chain of wars in a round
+     * @param maxPotSize the most cards in a war's pot
+     * @param cycleLength the length of the cycle if the game was drawn
+     */
+    public void record(int winner, int gameRounds, int gameWars, int maxWarDepth,
+                       int maxPotSize, int cycleLength) {
+        games++;
+        if (winner == WarEngine.PLAYER || winner == WarEngine.CPU) {
+            seatWins[winner]++;
+        } else {
+            draws++;
+            totalCycleLength += cycleLength;
+            return;
+        }
+        recordFinished(gameRounds, gameWars, maxWarDepth, maxPotSize);
+    }
+
+    /**
+     * Record the result of a game that a MultiWarEngine has just played
+     * @param engine the engine that played the game
+     * @param winner the winner's seat, MultiWarEngine.DRAW, or
+     * MultiWarEngine.NONE if everyone ran out of cards at once
+     */
+    public void record(MultiWarEngine engine, int winner) {
+        games++;
+        if (winner == MultiWarEngine.DRAW) {
+            draws++;
+            totalCycleLength += engine.getCycleLength();
+            return;
+        } else if (winner == MultiWarEngine.NONE) {
+            nobodyLeft++;
+        } else {
+            seatWins[winner]++;
+        }
+        recordFinished(engine.getRounds(), engine.getWars(), engine.getMaxWarDepth(),
+            engine.getMaxPotSize());
+    }
+
+    private void recordFinished(int gameRounds, int gameWars, int maxWarDepth, int maxPotSize) {
+        totalRounds += gameRounds;
+        totalWars += gameWars;
+        rounds.record(gameRounds);
+        wars.record(gameWars);
+        warDepths.record(maxWarDepth);
+        potSizes.record(maxPotSize);
+    }
+
+    /**
+     * Add another batch's totals to these
+     * @param other the totals to add
+     */
+    public void merge(TournamentStats other) {
+        games += other.games;
+        for (int i = 0; i < seatWins.length; i++) {
+            seatWins[i] += other.seatWins[i];
+        }
+        nobodyLeft += other.nobodyLeft;
+        draws += other.draws;
+        totalCycleLength += other.totalCycleLength;
+        totalRounds += other.totalRounds;
+        totalWars += other.totalWars;
+        rounds.merge(other.rounds);
+        wars.merge(other.wars);
+        warDepths.merge(other.warDepths);
+        potSizes.merge(other.potSizes);
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getPlayerWins() {
+        return seatWins[WarEngine.PLAYER];
+    }
+
+    public long getCpuWins() {
+        return seatWins[WarEngine.CPU];
+    }
+
+    /**
+     * Get the number of players at the table
+     */
+    public int getSeats() {
+        return seatWins.length;
+    }
+
+    /**
+     * Get the number of games won by the player in a seat
+     * @param seat the seat, counting from 0
+     */
+    public long getSeatWins(int seat) {
+        return seatWins[seat];
+    }
+
+    /**
+     * Get the fraction of finished games won by the player in a seat
+     * @param seat the seat, counting from 0
+     */
+    public double getSeatWinRate(int seat) {
+        return (getFinished() == 0) ? 0 : seatWins[seat] / (double) getFinished();
+    }
+
+    /**
+     * Get the number of games that ended with everyone out of cards at once
+     */
+    public long getNobodyLeft() {
+        return nobodyLeft;
+    }
+
+    /**
+     * Get the number of games that were drawn because they repeat forever
+     */
+    public long getDraws() {
+        return draws;
+    }
+
+    /**
+     * Get the mean number of rounds it takes a drawn game to repeat
+     */
+    public double getMeanCycleLength() {
+        return (draws == 0) ? 0 : totalCycleLength / (double) draws;
+    }
+
+    /**
+     * Get the total number of wars fought in finished games
+     */
+    public long getTotalWars() {
+        return totalWars;
+    }
+
+    private long getFinished() {
+        return games - draws;
+    }
+
+    /**
+     * Get the fraction of finished games that the player won
+     */
+    public double getPlayerWinRate() {
+        return getSeatWinRate(WarEngine.PLAYER);
+    }
+
+    /**
+     * Get the mean number of rounds in a finished game
+     */
+    public double getMeanRounds() {
+        return (getFinished() == 0) ? 0 : totalRounds / (double) getFinished();
+    }
+
+    /**
+     * Get the mean number of wars in a finished game
+     */
+    public double getMeanWars() {
+        return (getFinished() == 0) ? 0 : totalWars / (double) getFinished();
+    }
+
+    /**
+     * Get the median number of rounds in a finished game
+     */
+    public long getMedianRounds() {
+        return rounds.getValueAtPercentile(50);
+    }
+
+    /**
+     * Get the distribution of the number of rounds in a finished game
+     */
+    public Histogram getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Get the distribution of the number of wars in a finished game
+     */
+    public Histogram getWars() {
+        return wars;
+    }
+
+    /**
+     * Get the distribution of the longest chain of wars in a finished game
+     */
+    public Histogram getWarDepths() {
+        return warDepths;
+    }
+
+    /**
+     * Get the distribution of the biggest war pot in a finished game
+     */
+    public Histogram getPotSizes() {
+        return potSizes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Games:          %,d%n", games));
+        if (seatWins.length == 2) {
+            sb.append(String.format("Player wins:    %,d (%.4f%%)%n", getPlayerWins(), 100 * getPlayerWinRate()));
+            sb.append(String.format("CPU wins:       %,d%n", getCpuWins()));
+        } else {
+            for (int i = 0; i < seatWins.length; i++) {
+                sb.append(String.format("Seat %-2d wins:   %,d (%.4f%%)%n", i, seatWins[i],
+                    100 * getSeatWinRate(i)));
+            }
+            sb.append(String.format("Nobody left:    %,d%n", nobodyLeft));
+        }
+        sb.append(String.format("Drawn by cycle: %,d (mean cycle length %.1f)%n", draws, getMeanCycleLength()));
+        sb.append(String.format("Mean rounds:    %.2f%n", getMeanRounds()));
+        sb.append(String.format("Median rounds:  %,d%n", getMedianRounds()));
+        sb.append(String.format("Wars:           %,d (%.2f per game)%n", totalWars, getMeanWars()));
+        sb.append(String.format("%n%-16s%10s%10s%10s%10s%n", "per game", "p50", "p99", "p99.9", "max"));
+        appendPercentiles(sb, "Rounds", rounds);
+        appendPercentiles(sb, "Wars", wars);
+        appendPercentiles(sb, "Max war depth", warDepths);
+        appendPercentiles(sb, "Max pot", potSizes);
+        return sb.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder sb, String name, Histogram histogram) {
+        sb.append(String.format("%-16s%,10d%,10d%,10d%,10d%n", name,
+            histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+            histogram.getValueAtPercentile(99.9), histogram.getMax()));
+    }
+}
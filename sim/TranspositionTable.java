@@ -0,0 +1,103 @@
+package sim;
+
+/**
+ * A fixed-size hash table from a packed game position to the outcome of the
+ * game from that position. The table never grows: when two positions hash to
+ * the same slot the newer one replaces the older, so memory stays bounded and
+ * the worst a collision costs is solving a position again.
+ */
+public class TranspositionTable {
+    private final long[] keys;
+    private final int[] shapes;
+    private final byte[] outcomes;
+    private final int[] lengths;
+    private final int mask;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create an empty table
+     * @param sizeBits the table holds 2^sizeBits positions
+     */
+    public TranspositionTable(int sizeBits) {
+        int size = 1 << sizeBits;
+        keys = new long[size];
+        shapes = new int[size];
+        outcomes = new byte[size];
+        lengths = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Find the slot that a position is stored in
+     * @param key the packed card values
+     * @param shape describes how the values are split between the players;
+     * must not be 0
+     * @return the slot if the position is in the table, or -1 if it is not
+     */
+    public int find(long key, int shape) {
+        int slot = slotOf(key, shape);
+        if (shapes[slot] == shape && keys[slot] == key) {
+            hits++;
+            return slot;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Store the outcome of a position, replacing whatever was in its slot
+     * @param key the packed card values
+     * @param shape describes how the values are split between the players;
+     * must not be 0
+     * @param outcome the winner from this position
+     * @param length the number of rounds left to play from this position
+     */
+    public void store(long key, int shape, int outcome, int length) {
+        int slot = slotOf(key, shape);
+        if (shapes[slot] != 0 && (shapes[slot] != shape || keys[slot] != key)) {
+            evictions++;
+        }
+        keys[slot] = key;
+        shapes[slot] = shape;
+        outcomes[slot] = (byte) outcome;
+        lengths[slot] = length;
+    }
+
+    /**
+     * Get the outcome stored in a slot
+     * @param slot a slot returned by find
+     */
+    public int getOutcome(int slot) {
+        return outcomes[slot];
+    }
+
+    /**
+     * Get the number of rounds left to play stored in a slot
+     * @param slot a slot returned by find
+     */
+    public int getLength(int slot) {
+        return lengths[slot];
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private int slotOf(long key, int shape) {
+        long z = key ^ ((long) shape << 32) ^ shape;
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (z ^ (z >>> 33)) & mask;
+    }
+}
@@ -0,0 +1,90 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import engine.Rules;
+import engine.WarEngine;
+
+/**
+ * Plays the same deals under a list of rule variants and reports how each one
+ * changes the game, and how fast each one runs next to the standard rules.
+ * Each variant is a config read by Rules.parse and Rules.deckValues, so it can
+ * change the deck as well as the rules, as in "down=2 pot=sorted ranks=10".
+ * With no configs every combination of the rules is swept on a standard deck.
+ * Every variant runs on a WarEngine created with its Rules, which copies them
+ * into final fields.
+ */
+public class VariantSweep {
+    /**
+     * Play a sweep from the command line
+     * @param args the number of games per variant (default 100,000), the
+     * seed (default random), then any number of configs, each one argument;
+     * an argument "@file" reads configs from a file, one per line, skipping
+     * blank lines and lines starting with #
+     * @throws IOException if a file of configs can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        long games = (args.length > 0) ? Long.parseLong(args[0]) : 100_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+
+        List<String> configs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("@")) {
+                for (String line : Files.readAllLines(Path.of(args[i].substring(1)))) {
+                    if (!line.isBlank() && !line.trim().startsWith("#")) {
+                        configs.add(line);
+                    }
+                }
+            } else {
+                configs.add(args[i]);
+            }
+        }
+        if (configs.isEmpty()) {
+            configs = everyRule();
+        }
+
+        System.out.printf("Seed: %d%n", seed);
+        System.out.printf("%-56s%10s%10s%10s%12s%14s%n", "rules", "player", "draws", "rounds",
+            "p99 rounds", "rounds/s");
+        for (String config : configs) {
+            play(Rules.parse(config), Rules.deckValues(config), games, seed);
+        }
+    }
+
+    // A config for every combination of the rules, on a standard deck
+    private static List<String> everyRule() {
+        List<String> configs = new ArrayList<>();
+        for (String outOfCards : new String[] { "keep", "lose" }) {
+            for (String ace : new String[] { "high", "low" }) {
+                for (Rules.PotOrder potOrder : Rules.PotOrder.values()) {
+                    for (int faceDown = 1; faceDown <= 3; faceDown++) {
+                        configs.add("down=" + faceDown + " pot=" + potOrder.name().toLowerCase()
+                            + " ace=" + ace + " short=" + outOfCards);
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    private static void play(Rules rules, int[] values, long games, long seed) {
+        WarEngine engine = new WarEngine(values, rules);
+        TournamentStats stats = new TournamentStats();
+        long rounds = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < games; i++) {
+            engine.deal(seed, i);
+            stats.record(engine, engine.playGame());
+            rounds += engine.getRounds();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-56s%9.2f%%%10d%10.1f%,12d%,14.0f%n", rules + ", " + values.length + " cards",
+            100 * stats.getPlayerWinRate(), stats.getDraws(), stats.getMeanRounds(),
+            stats.getRounds().getValueAtPercentile(99), rounds / seconds);
+    }
+}
@@ -0,0 +1,284 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import engine.GameRandom;
+import engine.WarEngine;
+
+/**
+ * Estimates the chance that the player wins from a position where only the
+ * player's cards are known: the computer holds the rest of the deck, in an
+ * unknown order. Every core plays the position out against random orders of
+ * the computer's cards, and the sampling stops as soon as the confidence
+ * interval of the estimate is as narrow as was asked for, rather than after
+ * a fixed number of games.
+ *
+ * The workers add their results to striped LongAdders a batch at a time, so
+ * they never contend on one counter, and whichever worker sees the interval
+ * close raises a flag that stops the others at the end of their batch. One
+ * estimator can answer any number of queries, one after another.
+ *
+ * <p>Sample i is shuffled from (salted seed, i) rather than (seed, i), so an
+ * estimator given the seed a game was dealt from never copies the real
+ * deal's shuffle into one of its samples.
+ */
+public class WinEstimator {
+    // Games a worker plays between looks at the interval
+    private static final int BATCH = 32;
+    // Don't trust the interval before this many games
+    private static final int MIN_SAMPLES = 256;
+    // Moves the samples onto a different stream from the deals
+    private static final long SALT = 0x6f646473L;
+
+    private final int[] values;
+    private final ForkJoinPool pool;
+    private final long seed;
+    private final ThreadLocal<Sampler> samplers;
+
+    /**
+     * The result of an estimate
+     */
+    public static class Estimate {
+        private final long samples;
+        private final long wins;
+        private final long draws;
+        private final double low;
+        private final double high;
+        private final long nanos;
+
+        Estimate(long samples, long wins, long draws, double low, double high, long nanos) {
+            this.samples = samples;
+            this.wins = wins;
+            this.draws = draws;
+            this.low = low;
+            this.high = high;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Get the estimated chance that the player wins
+         */
+        public double getWinProbability() {
+            return (double) wins / samples;
+        }
+
+        /**
+         * Get the estimated chance that the game is drawn
+         */
+        public double getDrawProbability() {
+            return (double) draws / samples;
+        }
+
+        /**
+         * Get the low end of the confidence interval of the chance of winning
+         */
+        public double getLow() {
+            return low;
+        }
+
+        /**
+         * Get the high end of the confidence interval of the chance of winning
+         */
+        public double getHigh() {
+            return high;
+        }
+
+        /**
+         * Get the number of games played to make the estimate
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * Get the time the estimate took, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f%% to win (%.1f%% - %.1f%%), %.1f%% drawn, %,d games in %.1f ms",
+                100 * getWinProbability(), 100 * low, 100 * high, 100 * getDrawProbability(),
+                samples, nanos / 1e6);
+        }
+    }
+
+    // The engine and scratch space that belong to one thread
+    private class Sampler {
+        final WarEngine engine = new WarEngine(values);
+        final GameRandom random = new GameRandom(0, 0);
+        final int[] cpuCards = new int[values.length];
+    }
+
+    /**
+     * Create an estimator for a standard deck that uses every core
+     * @param seed the seed of the random orders tried
+     */
+    public WinEstimator(long seed) {
+        this(WarEngine.standardValues(), seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an estimator
+     * @param values the value of each card, indexed by card id
+     * @param seed the seed of the random orders tried
+     * @param pool the pool to play the games on
+     */
+    public WinEstimator(int[] values, long seed, ForkJoinPool pool) {
+        this.values = values.clone();
+        this.seed = seed ^ SALT;
+        this.pool = pool;
+        this.samplers = ThreadLocal.withInitial(Sampler::new);
+    }
+
+    /**
+     * Estimate the player's chance of winning
+     * @param playerCards the player's card ids, top of the deck first; the
+     * computer holds every other card
+     * @param width how wide the 95% confidence interval may be, e.g. 0.02 for
+     * plus or minus 1%
+     * @param maxSamples the most games to play, however wide the interval
+     * @return the estimate
+     */
+    public Estimate estimate(int[] playerCards, double width, long maxSamples) {
+        boolean[] held = new boolean[values.length];
+        for (int card : playerCards) {
+            held[card] = true;
+        }
+        int[] rest = new int[values.length - playerCards.length];
+        int count = 0;
+        for (int card = 0; card < values.length; card++) {
+            if (!held[card]) {
+                rest[count++] = card;
+            }
+        }
+        return estimate(playerCards, rest, width, maxSamples);
+    }
+
+    /**
+     * Estimate the player's chance of winning when the computer's cards are
+     * known but not their order, such as part way through a game where some
+     * cards have been lost in wars
+     * @param playerCards the player's card ids, top of the deck first
+     * @param cpuCards the computer's card ids, in any order
+     * @param width how wide the 95% confidence interval may be
+     * @param maxSamples the most games to play, however wide the interval
+     * @return the estimate
+     */
+    public Estimate estimate(int[] playerCards, int[] cpuCards, double width, long maxSamples) {
+        long start = System.nanoTime();
+        int[] rest = cpuCards.clone();
+
+        AtomicLong next = new AtomicLong();
+        LongAdder samples = new LongAdder();
+        LongAdder wins = new LongAdder();
+        LongAdder draws = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+
+        Runnable work = () -> {
+            Sampler s = samplers.get();
+            while (!stop.get()) {
+                long first = next.getAndAdd(BATCH);
+                if (first >= maxSamples) {
+                    return;
+                }
+                long end = Math.min(first + BATCH, maxSamples);
+                int batchWins = 0;
+                int batchDraws = 0;
+                for (long i = first; i < end; i++) {
+                    // Each sample gets its own order of the computer's cards
+                    System.arraycopy(rest, 0, s.cpuCards, 0, rest.length);
+                    s.random.setGame(seed, i);
+                    shuffle(s.cpuCards, rest.length, s.random);
+                    s.engine.deal(playerCards, playerCards.length, s.cpuCards, rest.length);
+                    int winner = s.engine.playGame();
+                    if (winner == WarEngine.PLAYER) {
+                        batchWins++;
+                    } else if (winner == WarEngine.DRAW) {
+                        batchDraws++;
+                    }
+                }
+                wins.add(batchWins);
+                draws.add(batchDraws);
+                samples.add(end - first);
+
+                long n = samples.sum();
+                if (n >= MIN_SAMPLES) {
+                    double[] interval = wilson(wins.sum(), n);
+                    if (interval[1] - interval[0] <= width) {
+                        stop.set(true);
+                    }
+                }
+            }
+        };
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < pool.getParallelism(); i++) {
+            tasks.add(pool.submit(work));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        long n = samples.sum();
+        long w = wins.sum();
+        double[] interval = wilson(w, n);
+        return new Estimate(n, w, draws.sum(), interval[0], interval[1], System.nanoTime() - start);
+    }
+
+    // Shuffle the first count cards of an array
+    private static void shuffle(int[] cards, int count, GameRandom random) {
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = cards[i];
+            cards[i] = cards[j];
+            cards[j] = temp;
+        }
+    }
+
+    /**
+     * Get the 95% Wilson score interval of a proportion, which behaves
+     * itself even when the proportion is close to 0 or 1
+     * @param successes the number of successes
+     * @param trials the number of trials
+     * @return the low and high ends of the interval
+     */
+    static double[] wilson(long successes, long trials) {
+        if (trials == 0) {
+            return new double[] { 0, 1 };
+        }
+        double z = 1.959963984540054;
+        double p = (double) successes / trials;
+        double z2n = z * z / trials;
+        double centre = (p + z2n / 2) / (1 + z2n);
+        double half = z * Math.sqrt(p * (1 - p) / trials + z2n / (4 * trials)) / (1 + z2n);
+        return new double[] { Math.max(0, centre - half), Math.min(1, centre + half) };
+    }
+
+    /**
+     * Estimate the odds of a few random deals from the command line
+     * @param args the width of the interval (default 0.05), the number of
+     * deals (default 5) and the seed (default random)
+     */
+    public static void main(String[] args) {
+        double width = (args.length > 0) ? Double.parseDouble(args[0]) : 0.05;
+        int deals = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime();
+
+        WinEstimator estimator = new WinEstimator(seed);
+        WarEngine engine = new WarEngine();
+        for (int i = 0; i < deals; i++) {
+            engine.deal(seed, i);
+            int[] playerCards = engine.getCards(WarEngine.PLAYER);
+            System.out.println("Deal " + i + ": " + estimator.estimate(playerCards, width, 10_000_000));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class WarEngineSaveTest {
+    private static final long SEED = 99;
+
+    private static byte[] save(WarEngine engine) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        engine.save(buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Play both engines to the end, checking they play every round the same
+    private static void assertPlaySame(WarEngine expected, WarEngine actual) {
+        while (!expected.isOver()) {
+            assertEquals(expected.playRound(), actual.playRound(), "round " + expected.getRounds());
+            assertEquals(expected.getWarDepth(), actual.getWarDepth());
+        }
+        assertEquals(expected.isOver(), actual.isOver());
+        assertEquals(expected.getWinner(), actual.getWinner());
+        assertEquals(expected.getRounds(), actual.getRounds());
+        assertEquals(expected.getWars(), actual.getWars());
+        assertEquals(expected.getMaxWarDepth(), actual.getMaxWarDepth());
+        assertEquals(expected.getMaxPotSize(), actual.getMaxPotSize());
+        assertEquals(expected.getCycleLength(), actual.getCycleLength());
+    }
+
+    private static void assertRestoresPartWay(Rules rules) {
+        for (long i = 0; i < 300; i++) {
+            WarEngine engine = new WarEngine(rules);
+            engine.deal(SEED, i);
+            for (int r = 0; r < i % 50 && !engine.isOver(); r++) {
+                engine.playRound();
+            }
+
+            byte[] saved = save(engine);
+            WarEngine restored = new WarEngine(rules);
+            restored.deal(SEED, i + 1);
+            ByteBuffer buffer = ByteBuffer.wrap(saved);
+            restored.restore(buffer);
+            assertEquals(saved.length, buffer.position(), "restore should stop at the end of the state");
+            assertArrayEquals(saved, save(restored));
+            assertPlaySame(engine, restored);
+        }
+    }
+
+    @Test
+    void restoresTheStandardGame() {
+        assertRestoresPartWay(Rules.STANDARD);
+    }
+
+    @Test
+    void restoresVariants() {
+        assertRestoresPartWay(new Rules(2, Rules.PotOrder.SORTED, true, Rules.OutOfCards.LOSE_WAR));
+        assertRestoresPartWay(new Rules(1, Rules.PotOrder.SHUFFLED, false,
+            Rules.OutOfCards.KEEP_LAST_CARD));
+    }
+
+    // Check a corrupt state is rejected and leaves the engine as it was
+    private static void assertRejected(Class<? extends RuntimeException> expected, byte[] state,
+            WarEngine engine) {
+        byte[] before = save(engine);
+        assertThrows(expected, () -> engine.restore(ByteBuffer.wrap(state)));
+        assertArrayEquals(before, save(engine));
+    }
+
+    @Test
+    void rejectsCorruptStates() {
+        WarEngine engine = new WarEngine();
+        engine.deal(SEED, 0);
+        for (int r = 0; r < 10; r++) {
+            engine.playRound();
+        }
+        byte[] saved = save(engine);
+
+        WarEngine target = new WarEngine();
+        target.deal(SEED, 1);
+
+        // The deck size, face-down cards and the rules byte come first, then
+        // the player's, computer's and pot's counts, each one byte here
+        byte[] wrongDeck = saved.clone();
+        wrongDeck[0] = 51;
+        assertRejected(IllegalArgumentException.class, wrongDeck, target);
+
+        byte[] wrongRules = saved.clone();
+        wrongRules[2] ^= 4;
+        assertRejected(IllegalArgumentException.class, wrongRules, target);
+
+        byte[] tooManyCards = saved.clone();
+        tooManyCards[3] = 60;
+        assertRejected(IllegalArgumentException.class, tooManyCards, target);
+
+        byte[] badCard = saved.clone();
+        badCard[6] = (byte) 0xFF;
+        assertRejected(IllegalArgumentException.class, badCard, target);
+
+        assertRejected(BufferUnderflowException.class, Arrays.copyOf(saved, saved.length - 3), target);
+
+        WarEngine otherRules = new WarEngine(new Rules(2, Rules.PotOrder.FIXED, false,
+            Rules.OutOfCards.KEEP_LAST_CARD));
+        otherRules.deal(SEED, 1);
+        assertRejected(IllegalArgumentException.class, saved, otherRules);
+    }
+}
@@ -0,0 +1,101 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import engine.WarEngine;
+
+class GameRecordTest {
+    private static final long SEED = 42;
+
+    // Play a game on an engine, recording every round
+    private static void play(WarEngine engine, GameRecord record, long gameIndex) {
+        engine.deal(SEED, gameIndex);
+        record.start(SEED, gameIndex, engine);
+        while (!engine.isOver()) {
+            int winner = engine.playRound();
+            record.addRound(winner, engine.getWarDepth());
+        }
+        record.finish(engine);
+    }
+
+    private static GameRecord decode(GameRecord record) {
+        byte[] bytes = Arrays.copyOf(record.encode(), record.getEncodedLength());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        GameRecord decoded = new GameRecord();
+        decoded.decode(buffer);
+        assertEquals(bytes.length, buffer.position(), "decode should stop at the end of the record");
+        return decoded;
+    }
+
+    private static void assertSameGame(GameRecord expected, GameRecord actual) {
+        assertEquals(expected.getSeed(), actual.getSeed());
+        assertEquals(expected.getGameIndex(), actual.getGameIndex());
+        assertEquals(expected.getRounds(), actual.getRounds());
+        for (int round = 0; round < expected.getRounds(); round++) {
+            assertEquals(expected.getRoundWinner(round), actual.getRoundWinner(round),
+                "winner of round " + round);
+            assertEquals(expected.getWarDepth(round), actual.getWarDepth(round),
+                "war depth of round " + round);
+        }
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getCycleLength(), actual.getCycleLength());
+    }
+
+    @Test
+    void decodesWhatWasEncoded() {
+        WarEngine engine = new WarEngine();
+        GameRecord record = new GameRecord();
+        for (long i = 0; i < 500; i++) {
+            play(engine, record, i);
+            GameRecord decoded = decode(record);
+            assertSameGame(record, decoded);
+
+            byte[] encoded = Arrays.copyOf(record.encode(), record.getEncodedLength());
+            assertArrayEquals(encoded, Arrays.copyOf(decoded.encode(), decoded.getEncodedLength()));
+        }
+    }
+
+    @Test
+    void replaysTheRecordedGame() {
+        WarEngine engine = new WarEngine();
+        GameRecord record = new GameRecord();
+        for (long i = 0; i < 100; i++) {
+            play(engine, record, i);
+            GameRecord decoded = decode(record);
+
+            WarEngine replay = new WarEngine();
+            decoded.deal(replay);
+            for (int round = 0; round < decoded.getRounds(); round++) {
+                assertEquals(decoded.getRoundWinner(round), replay.playRound(),
+                    "winner of round " + round);
+                assertEquals(decoded.getWarDepth(round), replay.getWarDepth(),
+                    "war depth of round " + round);
+            }
+            assertEquals(decoded.getResult(), replay.getWinner());
+        }
+    }
+
+    @Test
+    void encodesDeepWarsAndLargeNumbers() {
+        // Every round is the deepest war that can be recorded and nobody wins
+        // it, and the index takes the longest varint there is. A new record
+        // each time makes encode size its buffer exactly for the long games.
+        WarEngine engine = new WarEngine();
+        engine.deal(SEED, 0);
+        for (int rounds : new int[] { 1, 3, 4, 5, 1000, 5000 }) {
+            GameRecord record = new GameRecord();
+            record.start(-1L, -1L, engine);
+            for (int round = 0; round < rounds; round++) {
+                record.addRound(WarEngine.NONE, 127);
+            }
+            record.finish(engine);
+            assertSameGame(record, decode(record));
+        }
+    }
+}
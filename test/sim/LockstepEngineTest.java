@@ -0,0 +1,49 @@
+package sim;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Only built and run by the vector profile, like LockstepEngine itself
+ */
+class LockstepEngineTest {
+    private static final long SEED = 31337;
+
+    @Test
+    void playsTheSameGamesAsWarEngine() {
+        // Not a multiple of any lane count, so the last lanes run dry early
+        long games = 10_007;
+        TournamentStats expected = TournamentTest.playInOrder(games, SEED);
+        for (int lanes : new int[] { 1, 8, 32, 100 }) {
+            TournamentStats stats = new TournamentStats();
+            new LockstepEngine(lanes).play(SEED, 0, games, stats);
+            TournamentTest.assertSameStats(expected, stats);
+        }
+    }
+
+    @Test
+    void playsRangesOfGames() {
+        // Games 1,234 to 4,999 and then the ones before them, on one engine
+        TournamentStats expected = TournamentTest.playInOrder(5_000, SEED);
+        LockstepEngine engine = new LockstepEngine();
+        TournamentStats stats = new TournamentStats();
+        engine.play(SEED, 1_234, 5_000, stats);
+        engine.play(SEED, 0, 1_234, stats);
+        TournamentTest.assertSameStats(expected, stats);
+    }
+
+    @Test
+    void playsTheSameTournament() {
+        long games = 50_000;
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            TournamentStats scalar = new Tournament(games, SEED, pool).run();
+            Tournament tournament = new Tournament(games, SEED, pool);
+            tournament.setBatchPlayers(LockstepEngine::new);
+            TournamentTest.assertSameStats(scalar, tournament.run());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
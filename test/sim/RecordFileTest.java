@@ -0,0 +1,95 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import engine.WarEngine;
+
+class RecordFileTest {
+    private static final long SEED = 7;
+    private static final int GAMES = 200;
+
+    @TempDir
+    Path dir;
+
+    // Write some games to a file, one writer for all of them
+    private Path write() throws IOException {
+        Path file = dir.resolve("games.war");
+        WarEngine engine = new WarEngine();
+        GameRecord record = new GameRecord();
+        try (RecordWriter records = new RecordWriter(file)) {
+            for (long i = 0; i < GAMES; i++) {
+                engine.deal(SEED, i);
+                record.start(SEED, i, engine);
+                while (!engine.isOver()) {
+                    int winner = engine.playRound();
+                    record.addRound(winner, engine.getWarDepth());
+                }
+                record.finish(engine);
+                records.write(record);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void readsEveryGame() throws IOException {
+        try (RecordFile file = new RecordFile(write())) {
+            assertEquals(GAMES, file.getGames());
+            GameRecord record = new GameRecord();
+            for (int i = GAMES - 1; i >= 0; i--) {
+                file.read(i, record);
+                assertEquals(i, record.getGameIndex());
+                assertEquals(SEED, record.getSeed());
+            }
+        }
+    }
+
+    @Test
+    void stopsAtATornRecord() throws IOException {
+        Path path = write();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        try (RecordFile file = new RecordFile(path)) {
+            assertEquals(GAMES - 1, file.getGames());
+            GameRecord record = new GameRecord();
+            file.read(GAMES - 2, record);
+            assertEquals(GAMES - 2, record.getGameIndex());
+            assertThrows(IndexOutOfBoundsException.class, () -> file.read(GAMES - 1, record));
+        }
+    }
+
+    @Test
+    void appendsWithASmallBuffer() throws IOException {
+        Path path = dir.resolve("small.war");
+        WarEngine engine = new WarEngine();
+        GameRecord record = new GameRecord();
+        for (long i = 0; i < 20; i++) {
+            try (RecordWriter records = new RecordWriter(path, 16)) {
+                engine.deal(SEED, i);
+                record.start(SEED, i, engine);
+                while (!engine.isOver()) {
+                    record.addRound(engine.playRound(), engine.getWarDepth());
+                }
+                record.finish(engine);
+                records.write(record);
+            }
+        }
+
+        try (RecordFile file = new RecordFile(path)) {
+            assertEquals(20, file.getGames());
+            file.read(19, record);
+            assertEquals(19, record.getGameIndex());
+        }
+    }
+}
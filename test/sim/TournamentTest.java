@@ -0,0 +1,64 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import engine.WarEngine;
+
+class TournamentTest {
+    private static final long GAMES = 20_000;
+    private static final long SEED = 2024;
+
+    /**
+     * Check two sets of totals are the same, down to the histograms
+     */
+    static void assertSameStats(TournamentStats expected, TournamentStats actual) {
+        assertEquals(expected.getGames(), actual.getGames());
+        assertEquals(expected.getPlayerWins(), actual.getPlayerWins());
+        assertEquals(expected.getCpuWins(), actual.getCpuWins());
+        assertEquals(expected.getDraws(), actual.getDraws());
+        assertEquals(expected.getMeanRounds(), actual.getMeanRounds());
+        assertEquals(expected.getTotalWars(), actual.getTotalWars());
+        assertEquals(expected.getMeanCycleLength(), actual.getMeanCycleLength());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    // The games played one after another on one engine
+    static TournamentStats playInOrder(long games, long seed) {
+        WarEngine engine = new WarEngine();
+        TournamentStats stats = new TournamentStats();
+        for (long i = 0; i < games; i++) {
+            engine.deal(seed, i);
+            stats.record(engine, engine.playGame());
+        }
+        return stats;
+    }
+
+    @Test
+    void sameResultsAtAnyParallelism() {
+        TournamentStats expected = playInOrder(GAMES, SEED);
+        for (int threads : new int[] { 1, 2, 3, 8 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertSameStats(expected, new Tournament(GAMES, SEED, pool).run());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void runningAgainStartsFresh() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Tournament tournament = new Tournament(GAMES, SEED, pool);
+            TournamentStats first = tournament.run();
+            assertSameStats(first, tournament.run());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}